@@ -0,0 +1,33 @@
+package otp.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Generated input files shared by the benchmarks. The number of payment rows and the share of
+ * invalid lines can be changed from the command line, e.g. {@code -p rows=50000000}.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+  @Param({"10000", "1000000"})
+  public long rows;
+
+  @Param({"0.01"})
+  public double invalidShare;
+
+  public int customers;
+  public String customerFile;
+  public String paymentFile;
+
+  @Setup
+  public void generate() throws IOException {
+    customers = (int) Math.max(100, Math.min(Integer.MAX_VALUE, rows / 25));
+    Path directory = DataGenerator.cached(customers, rows, invalidShare);
+    customerFile = directory.resolve("customer.csv").toString();
+    paymentFile = directory.resolve("payments.csv").toString();
+  }
+}
@@ -0,0 +1,78 @@
+package otp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import otp.model.Payment;
+import otp.util.CSVReaderUtil;
+import otp.util.ConcurrentPaymentAggregator;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payments added from several producer threads, to the striped store and to a plain aggregator
+ * behind one lock. The number of producers is set with {@code -t}, e.g. {@code -t 16}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class ConcurrentAggregationBenchmark {
+  private Payment[] payments;
+  private ConcurrentPaymentAggregator striped;
+  private PaymentAggregator locked;
+
+  @Setup
+  public void setup(BenchmarkData data) {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex(data.customerFile);
+    List<Payment> paymentList = new ArrayList<>();
+    CSVReaderUtil.readPayments(data.paymentFile, customers, paymentList::add);
+    payments = paymentList.toArray(new Payment[0]);
+    striped = new ConcurrentPaymentAggregator(customers);
+    locked = new PaymentAggregator(customers);
+  }
+
+  @State(Scope.Thread)
+  public static class Producer {
+    private int next;
+
+    @Setup
+    public void setup(ConcurrentAggregationBenchmark benchmark) {
+      next = ThreadLocalRandom.current().nextInt(benchmark.payments.length);
+    }
+
+    private Payment next(Payment[] payments) {
+      Payment payment = payments[next];
+      next = next + 1 == payments.length ? 0 : next + 1;
+      return payment;
+    }
+  }
+
+  @Benchmark
+  public void stripedStore(Producer producer) {
+    striped.add(producer.next(payments));
+  }
+
+  @Benchmark
+  public void globalLock(Producer producer) {
+    Payment payment = producer.next(payments);
+    synchronized (locked) {
+      locked.add(payment);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package otp.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Writes synthetic customer.csv and payments.csv files. A configurable share of the lines is
+ * invalid, spread over the different validation rules. The output only depends on the
+ * arguments, so generated files are reused between benchmark runs.
+ */
+public class DataGenerator {
+  private static final String[] SHOPS = {"WS01", "WS02"};
+  private static final String[] NAMES =
+      {"Kovács János", "Kiss István", "Pézsma Réka", "Nagy Ferenc", "Hagyma Piroska"};
+  private static final String[] STREETS =
+      {"Kosárfonó u.", "Vizafogó u.", "Káposzta u.", "Toldi u.", "Tűzkő u."};
+
+  private DataGenerator() {
+    throw new UnsupportedOperationException("This is a util class!");
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println(
+          "Usage: DataGenerator <directory> <customers> <payments> [invalidShare] [seed]");
+      System.exit(1);
+    }
+    Path directory = Paths.get(args[0]);
+    int customers = Integer.parseInt(args[1]);
+    long payments = Long.parseLong(args[2]);
+    double invalidShare = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+    generate(directory, customers, payments, invalidShare, seed);
+  }
+
+  public static Path generate(Path directory, int customers, long payments, double invalidShare,
+      long seed) throws IOException {
+    Files.createDirectories(directory);
+    Path customerFile = directory.resolve("customer.csv");
+    Path paymentFile = directory.resolve("payments.csv");
+    if (!Files.exists(customerFile) || !Files.exists(paymentFile)) {
+      writeCustomers(customerFile, customers, invalidShare, new Random(seed));
+      writePayments(paymentFile, customers, payments, invalidShare, new Random(seed + 1));
+    }
+    return directory;
+  }
+
+  public static Path cached(int customers, long payments, double invalidShare)
+      throws IOException {
+    Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "otp-bench",
+        customers + "-" + payments + "-" + invalidShare);
+    return generate(directory, customers, payments, invalidShare, 1);
+  }
+
+  private static void writeCustomers(Path file, int customers, double invalidShare,
+      Random random) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < customers; i++) {
+        String shopId = SHOPS[i % SHOPS.length];
+        String customerId = customerId(i);
+        String name = NAMES[random.nextInt(NAMES.length)] + " " + i;
+        String address = "Bp. " + (1000 + random.nextInt(300)) + " " +
+            STREETS[random.nextInt(STREETS.length)] + " " + (1 + random.nextInt(120));
+        if (random.nextDouble() < invalidShare) {
+          switch (random.nextInt(3)) {
+            case 0:
+              shopId = "WS99";
+              break;
+            case 1:
+              name = " ";
+              break;
+            default:
+              address = "";
+              break;
+          }
+        }
+        writer.write(shopId + ";" + customerId + ";" + name + ";" + address);
+        writer.write('\n');
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void writePayments(Path file, int customers, long payments, double invalidShare,
+      Random random) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      StringBuilder line = new StringBuilder(96);
+      for (long i = 0; i < payments; i++) {
+        int customer = random.nextInt(customers);
+        String shopId = SHOPS[customer % SHOPS.length];
+        String customerId = customerId(customer);
+        boolean card = random.nextInt(4) != 0;
+        String type = card ? "card" : "transfer";
+        String amount = (1 + random.nextInt(50000)) + (random.nextBoolean() ? "" :
+            "." + random.nextInt(10) + random.nextInt(10));
+        String account = card ? "" : "1179400820544448";
+        String cardNumber = card ? "4908366099900433" : "";
+        String date = "2021." + twoDigits(1 + random.nextInt(12)) + "." +
+            twoDigits(1 + random.nextInt(28));
+        if (random.nextDouble() < invalidShare) {
+          switch (random.nextInt(5)) {
+            case 0:
+              customerId = "X" + customerId;
+              break;
+            case 1:
+              amount = "12,5";
+              break;
+            case 2:
+              type = "cash";
+              break;
+            case 3:
+              date = "2021.13.01";
+              break;
+            default:
+              date = "";
+              break;
+          }
+        }
+        line.setLength(0);
+        line.append(shopId).append(';').append(customerId).append(';').append(type).append(';')
+            .append(amount).append(';').append(account).append(';').append(cardNumber)
+            .append(';').append(date).append('\n');
+        writer.append(line);
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static String twoDigits(int value) {
+    return value < 10 ? "0" + value : Integer.toString(value);
+  }
+
+  private static String customerId(int customer) {
+    return "C" + customer;
+  }
+}
@@ -0,0 +1,46 @@
+package otp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.ParallelPaymentReader;
+import otp.util.PaymentAggregator;
+import otp.util.ReportUtil;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything Main does except writing the report files: customers, payments, sums and top
+ * customers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+  @Benchmark
+  public void sequential(BenchmarkData data, Blackhole blackhole) {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex(data.customerFile);
+    PaymentAggregator aggregator = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(data.paymentFile, customers, aggregator::add);
+    consume(aggregator, blackhole);
+  }
+
+  @Benchmark
+  public void parallel(BenchmarkData data, Blackhole blackhole) {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex(data.customerFile);
+    consume(new ParallelPaymentReader().readPayments(data.paymentFile, customers), blackhole);
+  }
+
+  private static void consume(PaymentAggregator aggregator, Blackhole blackhole) {
+    blackhole.consume(ReportUtil.selectTopCustomers(aggregator.getCustomerSums(), 2));
+    blackhole.consume(aggregator.getShopSums());
+  }
+}
@@ -0,0 +1,71 @@
+package otp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.ParallelPaymentReader;
+import otp.util.PaymentAggregator;
+import otp.util.PaymentSnapshot;
+import otp.util.PaymentSnapshotWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestionBenchmark {
+  private CustomerIndex customers;
+  private String snapshotFile;
+
+  @Setup
+  public void setup(BenchmarkData data) throws IOException {
+    customers = CSVReaderUtil.readCustomerIndex(data.customerFile);
+    snapshotFile = Files.createTempFile("payments", ".snapshot").toString();
+    try (PaymentSnapshotWriter writer = new PaymentSnapshotWriter(snapshotFile, customers, 0)) {
+      CSVReaderUtil.readPayments(data.paymentFile, customers, writer);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(Paths.get(snapshotFile));
+  }
+
+  @Benchmark
+  public CustomerIndex readCustomers(BenchmarkData data) {
+    return CSVReaderUtil.readCustomerIndex(data.customerFile);
+  }
+
+  @Benchmark
+  public void readPayments(BenchmarkData data, Blackhole blackhole) {
+    CSVReaderUtil.readPayments(data.paymentFile, customers, blackhole::consume);
+  }
+
+  @Benchmark
+  public PaymentAggregator readPaymentsParallel(BenchmarkData data) {
+    return new ParallelPaymentReader().readPayments(data.paymentFile, customers);
+  }
+
+  @Benchmark
+  public PaymentAggregator readSnapshot() throws IOException {
+    try (PaymentSnapshot snapshot = PaymentSnapshot.open(snapshotFile)) {
+      return snapshot.aggregate(customers);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package otp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sequential payment scan with the metrics on and off; {@code otp.metrics} is read once, so
+ * each variant runs in its own fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MetricsBenchmark {
+  private CustomerIndex customers;
+
+  @Setup
+  public void setup(BenchmarkData data) {
+    customers = CSVReaderUtil.readCustomerIndex(data.customerFile);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = "-Dotp.metrics=true")
+  public PaymentAggregator metricsOn(BenchmarkData data) {
+    return readPayments(data);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = "-Dotp.metrics=false")
+  public PaymentAggregator metricsOff(BenchmarkData data) {
+    return readPayments(data);
+  }
+
+  private PaymentAggregator readPayments(BenchmarkData data) {
+    PaymentAggregator aggregator = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(data.paymentFile, customers, aggregator::add);
+    return aggregator;
+  }
+}
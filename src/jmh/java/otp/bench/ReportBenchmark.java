@@ -0,0 +1,84 @@
+package otp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import otp.model.Customer;
+import otp.model.CustomerSum;
+import otp.model.Payment;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import otp.util.ReportUtil;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The report calculations on payments that are already in memory. The private calculations are
+ * called the same way CalculusTests calls them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+  @Param({"2"})
+  public int topCustomers;
+
+  private List<Customer> customers;
+  private List<Payment> payments;
+  private List<CustomerSum> customerSums;
+  private MethodHandle calculateCustomerSums;
+  private MethodHandle calculateShopSums;
+  private MethodHandle getTopLines;
+
+  @Setup
+  public void setup(BenchmarkData data) throws ReflectiveOperationException {
+    CustomerIndex customerIndex = CSVReaderUtil.readCustomerIndex(data.customerFile);
+    customers = customerIndex.getCustomers();
+    payments = new ArrayList<>();
+    CSVReaderUtil.readPayments(data.paymentFile, customerIndex, payments::add);
+    calculateCustomerSums = handle("calculateCustomerSums", List.class, List.class);
+    calculateShopSums = handle("calculateShopSums", List.class, List.class);
+    getTopLines = handle("getTopLines", List.class, Integer.class);
+    PaymentAggregator aggregator = new PaymentAggregator(customerIndex);
+    aggregator.addAll(payments);
+    customerSums = aggregator.getCustomerSums();
+  }
+
+  private static MethodHandle handle(String name, Class<?>... parameterTypes)
+      throws ReflectiveOperationException {
+    Method method = ReportUtil.class.getDeclaredMethod(name, parameterTypes);
+    method.setAccessible(true);
+    return MethodHandles.lookup().unreflect(method);
+  }
+
+  @Benchmark
+  public Object calculateCustomerSums() throws Throwable {
+    return calculateCustomerSums.invoke(customers, payments);
+  }
+
+  @Benchmark
+  public Object calculateShopSums() throws Throwable {
+    return calculateShopSums.invoke(customers, payments);
+  }
+
+  @Benchmark
+  public Object getTopLines() throws Throwable {
+    return getTopLines.invoke(customerSums, Integer.valueOf(topCustomers));
+  }
+}
@@ -0,0 +1,124 @@
+package otp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.ReportQueries;
+import otp.util.ReportServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the {@link ReportServer}: concurrent clients sending queries over loopback HTTP,
+ * with the latency percentiles (p0.99 and the like) of every query. The number of clients is set
+ * with {@code -t}, e.g. {@code -t 32}, the number of server threads with
+ * {@code -p serverThreads=8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+public class ReportServerBenchmark {
+  @Param({"4"})
+  public int serverThreads;
+
+  private ReportServer server;
+  private String base;
+  private String[] customerQueries;
+  private String[] shopQueries;
+  private String paymentLine;
+  private final HttpClient client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .build();
+
+  @Setup(Level.Trial)
+  public void setup(BenchmarkData data) throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex(data.customerFile);
+    ReportQueries.Loader loaded = new ReportQueries.Loader(customers);
+    CSVReaderUtil.readPayments(data.paymentFile, customers, loaded);
+    server = new ReportServer(new ReportQueries(loaded),
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), serverThreads, 10);
+    base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    customerQueries = new String[customers.size()];
+    for (int i = 0; i < customerQueries.length; i++) {
+      customerQueries[i] = "shop=" + encode(customers.getShopId(customers.getShopIndex(i))) +
+          "&customer=" + encode(customers.getCustomerId(i));
+    }
+    shopQueries = new String[customers.getShopCount()];
+    for (int i = 0; i < shopQueries.length; i++) {
+      shopQueries[i] = "shop=" + encode(customers.getShopId(i));
+    }
+    paymentLine = customers.getShopId(customers.getShopIndex(0)) + ";" +
+        customers.getCustomerId(0) + ";card;1;;4908366099900433;2021.06.15\n";
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    server.close();
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  private static <T> T any(T[] values) {
+    return values[ThreadLocalRandom.current().nextInt(values.length)];
+  }
+
+  private String get(String path) throws IOException, InterruptedException {
+    return client.send(HttpRequest.newBuilder(URI.create(base + path)).build(),
+        HttpResponse.BodyHandlers.ofString()).body();
+  }
+
+  @Benchmark
+  public String customerLookup() throws IOException, InterruptedException {
+    return get("/customer?" + any(customerQueries));
+  }
+
+  @Benchmark
+  public String shopLookup() throws IOException, InterruptedException {
+    return get("/shop?" + any(shopQueries));
+  }
+
+  @Benchmark
+  public String customerRange() throws IOException, InterruptedException {
+    return get("/customer?" + any(customerQueries) + "&from=2021.03.01&to=2021.05.31");
+  }
+
+  @Benchmark
+  public String topTen() throws IOException, InterruptedException {
+    return get("/top?n=10");
+  }
+
+  @Benchmark
+  public String append() throws IOException, InterruptedException {
+    return client.send(HttpRequest.newBuilder(URI.create(base + "/payments"))
+        .POST(HttpRequest.BodyPublishers.ofString(paymentLine)).build(),
+        HttpResponse.BodyHandlers.ofString()).body();
+  }
+}
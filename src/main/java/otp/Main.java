@@ -1,18 +1,34 @@
 package otp;
 
-import otp.model.Customer;
-import otp.model.CustomerSum;
-import otp.model.Payment;
 import otp.util.CSVReaderUtil;
-import otp.util.ReportUtil;
-import java.util.List;
+import otp.util.CustomerDirectory;
+import otp.util.Metrics;
+import otp.util.ReportConfig;
+import otp.util.ReportPipeline;
+import otp.util.ReportServer;
+import java.io.IOException;
 
 public class Main {
-  public static void main(String[] args) {
-    List<Customer> customers = CSVReaderUtil.readCustomers();
-    List<Payment> payments = CSVReaderUtil.readPayments(customers);
-    List<CustomerSum> customerSums = ReportUtil.sumByCustomerReport(customers, payments);
-    ReportUtil.reportTopNCustomers(customerSums, 2);
-    ReportUtil.reportByWebShop(customers, payments);
+  public static void main(String[] args) throws IOException {
+    ReportConfig config = ReportConfig.fromArgs(args);
+    if (config.isMetricsJmx()) {
+      Metrics.enableJmx();
+    }
+    CustomerDirectory customers = CSVReaderUtil.readCustomerDirectory(config.getCustomersFile(),
+        config.isOffHeapCustomers(), config.getShops(), config.getThreads());
+    if (config.getMode().equals(ReportConfig.MODE_SERVE)) {
+      ReportServer server = ReportServer.start(config, customers);
+      CSVReaderUtil.getRejections().logSummary();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        server.close();
+        CSVReaderUtil.getRejections().close();
+        Metrics.dump(config.getMetricsFile());
+      }));
+      return;
+    }
+    new ReportPipeline(config, customers).run();
+    CSVReaderUtil.getRejections().logSummary();
+    CSVReaderUtil.getRejections().close();
+    Metrics.dump(config.getMetricsFile());
   }
 }
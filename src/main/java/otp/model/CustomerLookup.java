@@ -0,0 +1,11 @@
+package otp.model;
+
+/**
+ * Customers addressed by a dense index, which a {@link Payment} can refer to instead of keeping
+ * its own copies of the identifiers.
+ */
+public interface CustomerLookup {
+  String getCustomerShopId(int index);
+
+  String getCustomerId(int index);
+}
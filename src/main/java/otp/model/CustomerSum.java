@@ -6,12 +6,18 @@ import java.util.Objects;
 public class CustomerSum {
   private String name;
   private String address;
-  private BigDecimal sum;
+  private long sumUnits;
+  private int sumScale;
 
   public CustomerSum(String name, String address, BigDecimal sum) {
+    this(name, address, FixedPoint.toUnits(sum), FixedPoint.scaleOf(sum));
+  }
+
+  public CustomerSum(String name, String address, long sumUnits, int sumScale) {
     this.name = name;
     this.address = address;
-    this.sum = sum;
+    this.sumUnits = sumUnits;
+    this.sumScale = sumScale;
   }
 
   public String getName() {
@@ -23,11 +29,19 @@ public class CustomerSum {
   }
 
   public BigDecimal getSum() {
-    return sum;
+    return FixedPoint.toBigDecimal(sumUnits, sumScale);
+  }
+
+  public long getSumUnits() {
+    return sumUnits;
+  }
+
+  public int getSumScale() {
+    return sumScale;
   }
 
   public String getCSVLine() {
-    return this.name + ";" + this.address + ";" + this.sum;
+    return this.name + ";" + this.address + ";" + getSum();
   }
 
   @Override public boolean equals(Object o) {
@@ -35,10 +49,11 @@ public class CustomerSum {
     if (o == null || getClass() != o.getClass()) return false;
     CustomerSum that = (CustomerSum) o;
     return Objects.equals(name, that.name) &&
-        Objects.equals(address, that.address) && Objects.equals(sum, that.sum);
+        Objects.equals(address, that.address) && sumUnits == that.sumUnits &&
+        sumScale == that.sumScale;
   }
 
   @Override public int hashCode() {
-    return Objects.hash(name, address, sum);
+    return Objects.hash(name, address, sumUnits, sumScale);
   }
 }
@@ -0,0 +1,74 @@
+package otp.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts are kept as {@code long} units of {@code 10^-SCALE} together with the BigDecimal scale
+ * they would have had, so {@link #toBigDecimal(long, int)} gives back exactly the value (and
+ * scale) the BigDecimal arithmetic would have produced. The precision is configured by the
+ * {@code otp.amount.scale} system property.
+ * <p>
+ * Unlike the BigDecimal sums before, an amount needs to fit into {@code SCALE} decimal places:
+ * the readers reject payment lines with more of them as
+ * {@code PAYMENT_AMOUNT_OUT_OF_RANGE}, while {@link #toUnits(BigDecimal)} rounds such amounts
+ * half-even, so the model setters don't throw for them.
+ */
+public final class FixedPoint {
+  public static final int SCALE = Integer.getInteger("otp.amount.scale", 4);
+  private static final long[] POWERS_OF_TEN = new long[19];
+
+  static {
+    if (SCALE < 0 || SCALE >= POWERS_OF_TEN.length) {
+      throw new IllegalArgumentException("The amount scale must be between 0 and 18: " + SCALE);
+    }
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private FixedPoint() {
+    throw new UnsupportedOperationException("This is a util class!");
+  }
+
+  /**
+   * Returns whether the value is kept exactly, without rounding or overflow.
+   */
+  public static boolean fits(BigDecimal value) {
+    return value.stripTrailingZeros().scale() <= SCALE &&
+        value.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().bitLength() < Long.SIZE;
+  }
+
+  /**
+   * Returns the units of the value, rounded half-even to {@code SCALE} decimal places. Throws an
+   * ArithmeticException only if the units don't fit into a {@code long}.
+   */
+  public static long toUnits(BigDecimal value) {
+    return value.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+  }
+
+  /**
+   * Returns the scale of the value, or {@code SCALE} if {@link #toUnits(BigDecimal)} rounds it.
+   */
+  public static int scaleOf(BigDecimal value) {
+    int scale = Math.max(0, value.scale());
+    return scale <= SCALE || value.stripTrailingZeros().scale() <= SCALE ? scale : SCALE;
+  }
+
+  public static BigDecimal toBigDecimal(long units, int scale) {
+    return BigDecimal.valueOf(units, SCALE).setScale(scale);
+  }
+
+  public static long powerOfTen(int exponent) {
+    return POWERS_OF_TEN[exponent];
+  }
+
+  public static long add(long units, long otherUnits) {
+    try {
+      return Math.addExact(units, otherUnits);
+    } catch (ArithmeticException e) {
+      throw new ArithmeticException("The sum of the amounts overflows the supported range");
+    }
+  }
+}
@@ -2,36 +2,73 @@ package otp.model;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Objects;
 
+/**
+ * A parsed payment. Payments read through a customer index reference their customer by its
+ * index there instead of keeping their own copies of the identifiers; the date is kept as an
+ * epoch day.
+ */
 public class Payment {
+  public static final int NO_DATE = Integer.MIN_VALUE;
+
+  private CustomerLookup customers;
+  private int customerIndex = -1;
   private String shopId;
   private String customerId;
 
   private PaymentType type;
-  private BigDecimal amount;
+  private long amountUnits;
+  private int amountScale;
 
   private String bankAccount;
 
   private String cardNumber;
 
-  private LocalDate paymentDate;
+  private int paymentDay = NO_DATE;
 
   public String getShopId() {
-    return shopId;
+    return Objects.nonNull(customers) ? customers.getCustomerShopId(customerIndex) : shopId;
   }
 
   public void setShopId(String shopId) {
+    detachCustomer();
     this.shopId = shopId;
   }
 
   public String getCustomerId() {
-    return customerId;
+    return Objects.nonNull(customers) ? customers.getCustomerId(customerIndex) : customerId;
   }
 
   public void setCustomerId(String customerId) {
+    detachCustomer();
     this.customerId = customerId;
   }
 
+  public CustomerLookup getCustomers() {
+    return customers;
+  }
+
+  public int getCustomerIndex() {
+    return customerIndex;
+  }
+
+  public void setCustomer(CustomerLookup customers, int customerIndex) {
+    this.customers = customers;
+    this.customerIndex = customerIndex;
+    this.shopId = null;
+    this.customerId = null;
+  }
+
+  private void detachCustomer() {
+    if (Objects.nonNull(customers)) {
+      shopId = customers.getCustomerShopId(customerIndex);
+      customerId = customers.getCustomerId(customerIndex);
+      customers = null;
+      customerIndex = -1;
+    }
+  }
+
   public PaymentType getType() {
     return type;
   }
@@ -41,11 +78,24 @@ public class Payment {
   }
 
   public BigDecimal getAmount() {
-    return amount;
+    return FixedPoint.toBigDecimal(amountUnits, amountScale);
   }
 
   public void setAmount(BigDecimal amount) {
-    this.amount = amount;
+    setAmount(FixedPoint.toUnits(amount), FixedPoint.scaleOf(amount));
+  }
+
+  public long getAmountUnits() {
+    return amountUnits;
+  }
+
+  public int getAmountScale() {
+    return amountScale;
+  }
+
+  public void setAmount(long amountUnits, int amountScale) {
+    this.amountUnits = amountUnits;
+    this.amountScale = amountScale;
   }
 
   public String getBankAccount() {
@@ -65,10 +115,19 @@ public class Payment {
   }
 
   public LocalDate getPaymentDate() {
-    return paymentDate;
+    return paymentDay == NO_DATE ? null : LocalDate.ofEpochDay(paymentDay);
   }
 
   public void setPaymentDate(LocalDate paymentDate) {
-    this.paymentDate = paymentDate;
+    this.paymentDay = Objects.isNull(paymentDate) ? NO_DATE :
+        Math.toIntExact(paymentDate.toEpochDay());
+  }
+
+  public int getPaymentDay() {
+    return paymentDay;
+  }
+
+  public void setPaymentDay(int paymentDay) {
+    this.paymentDay = paymentDay;
   }
 }
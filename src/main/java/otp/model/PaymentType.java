@@ -6,6 +6,7 @@ import java.util.Optional;
 public enum PaymentType {
   CARD("card"),
   TRANSFER("transfer");
+  private static final PaymentType[] VALUES = values();
   private String value;
 
   PaymentType(String value) {
@@ -20,7 +21,7 @@ public enum PaymentType {
     if (Objects.isNull(value) || value.length() == 0) {
       return Optional.empty();
     }
-    for (PaymentType type : PaymentType.values()) {
+    for (PaymentType type : VALUES) {
       if (type.value.equals(value)) {
         return Optional.of(type);
       }
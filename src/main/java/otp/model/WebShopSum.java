@@ -1,16 +1,27 @@
 package otp.model;
 
 import java.math.BigDecimal;
+import java.util.Objects;
 
 public class WebShopSum {
   private String shopId;
-  private BigDecimal cardSum;
-  private BigDecimal transferSum;
+  private long cardSumUnits;
+  private int cardSumScale;
+  private long transferSumUnits;
+  private int transferSumScale;
 
   public WebShopSum(String shopId, BigDecimal cardSum, BigDecimal transferSum) {
+    this(shopId, FixedPoint.toUnits(cardSum), FixedPoint.scaleOf(cardSum),
+        FixedPoint.toUnits(transferSum), FixedPoint.scaleOf(transferSum));
+  }
+
+  public WebShopSum(String shopId, long cardSumUnits, int cardSumScale, long transferSumUnits,
+      int transferSumScale) {
     this.shopId = shopId;
-    this.cardSum = cardSum;
-    this.transferSum = transferSum;
+    this.cardSumUnits = cardSumUnits;
+    this.cardSumScale = cardSumScale;
+    this.transferSumUnits = transferSumUnits;
+    this.transferSumScale = transferSumScale;
   }
 
   public String getShopId() {
@@ -18,14 +29,35 @@ public class WebShopSum {
   }
 
   public BigDecimal getCardSum() {
-    return cardSum;
+    return FixedPoint.toBigDecimal(cardSumUnits, cardSumScale);
   }
 
   public BigDecimal getTransferSum() {
-    return transferSum;
+    return FixedPoint.toBigDecimal(transferSumUnits, transferSumScale);
+  }
+
+  public long getCardSumUnits() {
+    return cardSumUnits;
+  }
+
+  public long getTransferSumUnits() {
+    return transferSumUnits;
   }
 
   public String getCSVLine() {
-    return this.shopId + ";" + this.cardSum + ";" + this.transferSum;
+    return this.shopId + ";" + getCardSum() + ";" + getTransferSum();
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    WebShopSum that = (WebShopSum) o;
+    return Objects.equals(shopId, that.shopId) && cardSumUnits == that.cardSumUnits &&
+        cardSumScale == that.cardSumScale && transferSumUnits == that.transferSumUnits &&
+        transferSumScale == that.transferSumScale;
+  }
+
+  @Override public int hashCode() {
+    return Objects.hash(shopId, cardSumUnits, cardSumScale, transferSumUnits, transferSumScale);
   }
 }
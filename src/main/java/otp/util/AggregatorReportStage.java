@@ -0,0 +1,149 @@
+package otp.util;
+
+import otp.model.Payment;
+import java.util.Objects;
+
+/**
+ * Base of the reports computed from the customer and shop totals of a {@link PaymentAggregator}.
+ * The customer reports of a pipeline share one aggregator, like the ones of
+ * {@link SpillingReportStage}: only the first of them is fed, the others read its totals.
+ */
+public abstract class AggregatorReportStage implements ReportStage {
+  protected final PaymentAggregator aggregator;
+  private final boolean fed;
+
+  protected AggregatorReportStage(CustomerDirectory customers) {
+    this(new PaymentAggregator(customers));
+  }
+
+  protected AggregatorReportStage(PaymentAggregator aggregator) {
+    this(aggregator, true);
+  }
+
+  protected AggregatorReportStage(PaymentAggregator aggregator, boolean fed) {
+    this.aggregator = aggregator;
+    this.fed = fed;
+  }
+
+  /**
+   * Lets the customer reports read the aggregator of the first one of them, which alone is fed.
+   */
+  static void share(ReportStage[] stages) {
+    CustomerTotalsStage owner = null;
+    for (int i = 0; i < stages.length; i++) {
+      if (stages[i] instanceof CustomerTotalsStage) {
+        CustomerTotalsStage stage = (CustomerTotalsStage) stages[i];
+        if (Objects.isNull(owner)) {
+          owner = stage;
+        } else {
+          stages[i] = stage.reading(owner.aggregator);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    if (fed) {
+      aggregator.add(payment);
+    }
+  }
+
+  @Override
+  public void merge(ReportStage other) {
+    if (fed) {
+      aggregator.merge(((AggregatorReportStage) other).aggregator);
+    }
+  }
+
+  @Override
+  public boolean addTotals(PaymentAggregator totals) {
+    if (fed) {
+      aggregator.merge(totals);
+    }
+    return true;
+  }
+
+  /**
+   * Base of the reports that only need the customer totals, which can share an aggregator.
+   */
+  public abstract static class CustomerTotalsStage extends AggregatorReportStage {
+    protected CustomerTotalsStage(PaymentAggregator aggregator, boolean fed) {
+      super(aggregator, fed);
+    }
+
+    /**
+     * Returns the same report reading the totals of the aggregator without feeding it.
+     */
+    protected abstract CustomerTotalsStage reading(PaymentAggregator aggregator);
+  }
+
+  public static class Customers extends CustomerTotalsStage {
+    public Customers(CustomerDirectory customers) {
+      this(new PaymentAggregator(customers), true);
+    }
+
+    private Customers(PaymentAggregator aggregator, boolean fed) {
+      super(aggregator, fed);
+    }
+
+    @Override
+    protected CustomerTotalsStage reading(PaymentAggregator aggregator) {
+      return new Customers(aggregator, false);
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new Customers(aggregator.getCustomers());
+    }
+
+    @Override
+    public void write(String fileName) {
+      ReportUtil.writeCustomerReport(aggregator.getCustomerSums(), fileName);
+    }
+  }
+
+  public static class TopCustomers extends CustomerTotalsStage {
+    private final int numberOfCustomers;
+
+    public TopCustomers(CustomerDirectory customers, int numberOfCustomers) {
+      this(new PaymentAggregator(customers), true, numberOfCustomers);
+    }
+
+    private TopCustomers(PaymentAggregator aggregator, boolean fed, int numberOfCustomers) {
+      super(aggregator, fed);
+      this.numberOfCustomers = numberOfCustomers;
+    }
+
+    @Override
+    protected CustomerTotalsStage reading(PaymentAggregator aggregator) {
+      return new TopCustomers(aggregator, false, numberOfCustomers);
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new TopCustomers(aggregator.getCustomers(), numberOfCustomers);
+    }
+
+    @Override
+    public void write(String fileName) {
+      ReportUtil.reportTopNCustomers(aggregator.getCustomerSums(), numberOfCustomers, fileName);
+    }
+  }
+
+  public static class WebShops extends AggregatorReportStage {
+    public WebShops(CustomerDirectory customers) {
+      super(PaymentAggregator.ofShops(customers));
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new WebShops(aggregator.getCustomers());
+    }
+
+    @Override
+    public void write(String fileName) {
+      ReportUtil.writeWebShopReport(aggregator.getShopSums(), fileName);
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+
+public class AmountTotal {
+  private long units;
+  private int scale;
+
+  public void add(long units, int scale) {
+    this.units = FixedPoint.add(this.units, units);
+    if (scale > this.scale) {
+      this.scale = scale;
+    }
+  }
+
+  public void add(AmountTotal other) {
+    add(other.units, other.scale);
+  }
+
+  public long getUnits() {
+    return units;
+  }
+
+  public int getScale() {
+    return scale;
+  }
+}
@@ -0,0 +1,54 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+import java.util.Arrays;
+
+/**
+ * {@link AmountTotal}s kept in parallel primitive arrays, indexed by a dense customer or shop
+ * index. Grows on demand, indices never added to read as zero.
+ */
+public class AmountTotals {
+  private long[] units;
+  private int[] scales;
+
+  public AmountTotals(int size) {
+    units = new long[Math.max(size, 1)];
+    scales = new int[units.length];
+  }
+
+  public void add(int index, long units, int scale) {
+    if (index >= this.units.length) {
+      grow(index + 1);
+    }
+    this.units[index] = FixedPoint.add(this.units[index], units);
+    if (scale > scales[index]) {
+      scales[index] = scale;
+    }
+  }
+
+  public void add(AmountTotals other) {
+    for (int i = 0; i < other.units.length; i++) {
+      if (other.units[i] != 0 || other.scales[i] != 0) {
+        add(i, other.units[i], other.scales[i]);
+      }
+    }
+  }
+
+  public long getUnits(int index) {
+    return index >= 0 && index < units.length ? units[index] : 0;
+  }
+
+  public int getScale(int index) {
+    return index >= 0 && index < scales.length ? scales[index] : 0;
+  }
+
+  public int size() {
+    return units.length;
+  }
+
+  private void grow(int size) {
+    int capacity = Math.max(size, units.length * 2);
+    units = Arrays.copyOf(units, capacity);
+    scales = Arrays.copyOf(scales, capacity);
+  }
+}
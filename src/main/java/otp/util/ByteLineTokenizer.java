@@ -0,0 +1,103 @@
+package otp.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable single pass field scanner over UTF-8 encoded lines of a {@link ByteBuffer}, typically
+ * a memory mapped file. Each line is copied to a reusable array with one bulk read, field strings
+ * are only decoded when asked for.
+ */
+public class ByteLineTokenizer extends FieldTokenizer {
+  private final byte separator;
+  private byte[] line = new byte[128];
+  private int lineLength;
+
+  public ByteLineTokenizer(char separator) {
+    if (separator > 0x7f) {
+      throw new IllegalArgumentException("The separator must be an ASCII character");
+    }
+    this.separator = (byte) separator;
+  }
+
+  public ByteLineTokenizer reset(ByteBuffer buffer, int lineStart, int lineEnd) {
+    lineLength = lineEnd - lineStart;
+    if (lineLength > line.length) {
+      line = new byte[Math.max(lineLength, line.length * 2)];
+    }
+    buffer.get(lineStart, line, 0, lineLength);
+    fieldCount = 0;
+    int start = 0;
+    for (int i = 0; i < lineLength; i++) {
+      if (line[i] == separator) {
+        addField(start, i);
+        start = i + 1;
+      }
+    }
+    addField(start, lineLength);
+    dropTrailingEmptyFields(lineLength == 0);
+    return this;
+  }
+
+  @Override
+  public String line() {
+    return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String field(int index) {
+    return new String(line, starts[index], ends[index] - starts[index], StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public boolean isBlank(int index) {
+    for (int i = starts[index]; i < ends[index]; i++) {
+      byte b = line[i];
+      if (b < 0) {
+        return field(index).isBlank();
+      }
+      if (!Character.isWhitespace(b)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public char charAt(int index, int offset) {
+    byte b = line[starts[index] + offset];
+    return b < 0 ? NON_ASCII : (char) b;
+  }
+
+  @Override
+  public boolean fieldEquals(int index, String value) {
+    int start = starts[index];
+    int length = ends[index] - start;
+    if (length < value.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      byte b = line[start + i];
+      if (b < 0) {
+        return field(index).equals(value);
+      }
+      if (i == value.length() || b != value.charAt(i)) {
+        return false;
+      }
+    }
+    return length == value.length();
+  }
+
+  @Override
+  public int hash(int index) {
+    int hash = 0;
+    for (int i = starts[index]; i < ends[index]; i++) {
+      byte b = line[i];
+      if (b < 0) {
+        return field(index).hashCode();
+      }
+      hash = 31 * hash + b;
+    }
+    return hash;
+  }
+}
@@ -3,216 +3,409 @@ package otp.util;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import otp.model.Customer;
+import otp.model.FixedPoint;
 import otp.model.Payment;
 import otp.model.PaymentType;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class CSVReaderUtil {
   private static final Logger log = LogManager.getLogger(CSVReaderUtil.class);
+  public static final String CUSTOMERS_FILE = "src/main/resources/csv/customer.csv";
+  public static final String PAYMENTS_FILE = "src/main/resources/csv/payments.csv";
+  public static final Set<String> DEFAULT_SHOPS =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList("WS01", "WS02")));
+  static final char SEPARATOR = ';';
+  private static final DateTimeFormatter PAYMENT_DATE_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy.MM.dd");
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+  private static final RejectionReporter rejections = new RejectionReporter(log,
+      RejectionReporter.DEFAULT_SAMPLES, RejectionReporter.DEFAULT_REJECTS_FILE);
+  private static final int TIMING_SAMPLE = 64;
+  private static final Metrics.Timer customersTimer = Metrics.timer("phase.customers");
+  private static final Metrics.Counter customerLines = Metrics.counter("customers.lines");
+  private static final Metrics.Counter customersAccepted = Metrics.counter("customers.accepted");
+  private static final Metrics.Timer paymentsTimer = Metrics.timer("payments.read");
+  private static final Metrics.Timer parseTimer = Metrics.timer("payments.parse");
+  private static final Metrics.Timer consumeTimer = Metrics.timer("payments.consume");
+  private static final Metrics.Counter paymentLines = Metrics.counter("payments.lines");
+  private static final Metrics.Counter paymentsAccepted = Metrics.counter("payments.accepted");
+
+  static {
+    for (RejectionReason reason : RejectionReason.values()) {
+      Metrics.gauge("rejected." + reason, () -> rejections.getCount(reason));
+    }
+    Metrics.gauge("rejected.total", rejections::getTotal);
+  }
 
   private CSVReaderUtil() {
     throw new UnsupportedOperationException("This is a util class!");
   }
 
+  public static RejectionReporter getRejections() {
+    return rejections;
+  }
+
   public static List<Customer> readCustomers() {
-    List<String> customerLines = getContent("src/main/resources/csv/customer.csv");
-    return getCustomers(customerLines);
+    return readCustomerIndex().getCustomers();
   }
 
-  private static List<Customer> getCustomers(List<String> customerLines) {
-    List<Customer> customers = new ArrayList<>();
-    Map<String, List<String>> customersByShop = new HashMap<>();
-    for (String line : customerLines) {
-      if (validCustomerData(line, customersByShop)) {
-        customers.add(createCustomer(line));
-      }
-    }
-    return customers;
+  public static CustomerIndex readCustomerIndex() {
+    return readCustomerIndex(CUSTOMERS_FILE);
   }
 
-  private static Customer createCustomer(String line) {
-    String[] parts = line.split(";");
-    Customer customer = new Customer();
-    customer.setShopId(parts[0]);
-    customer.setCustomerId(parts[1]);
-    customer.setName(parts[2]);
-    customer.setAddress(parts[3]);
-    return customer;
+  public static CustomerIndex readCustomerIndex(String fileName) {
+    return readCustomers(fileName, new CustomerIndex(), DEFAULT_SHOPS);
   }
 
-  private static boolean validCustomerData(String line, Map<String, List<String>> customersByShop) {
-    if (Objects.isNull(line)) {
-      log.error("The provided line of customer is null");
-      return false;
+  public static CustomerDirectory readCustomerDirectory(String fileName, boolean offHeap) {
+    return readCustomerDirectory(fileName, offHeap, DEFAULT_SHOPS, 1);
+  }
+
+  /**
+   * Loads the customers of the allowed shops into an {@link OffHeapCustomerDirectory} or a
+   * {@link CustomerIndex}, with a {@link ParallelCustomerReader} when there are more threads.
+   */
+  public static CustomerDirectory readCustomerDirectory(String fileName, boolean offHeap,
+      Set<String> shops, int threads) {
+    CustomerDirectory customers = offHeap ? new OffHeapCustomerDirectory() : new CustomerIndex();
+    return threads > 1 ?
+        new ParallelCustomerReader(threads).readCustomers(fileName, customers, shops) :
+        readCustomers(fileName, customers, shops);
+  }
+
+  /**
+   * Loads the customers into an {@link OffHeapCustomerDirectory}, so that no per customer state
+   * stays on the heap.
+   */
+  public static OffHeapCustomerDirectory readOffHeapCustomerDirectory(String fileName) {
+    return readCustomers(fileName, new OffHeapCustomerDirectory(), DEFAULT_SHOPS);
+  }
+
+  /**
+   * Adds the valid customers of the allowed shops to the directory; of the customers with the
+   * same shop and customer id the first one wins, the others are rejected as duplicates. A read
+   * error is thrown as an {@link UncheckedIOException}.
+   */
+  public static <T extends CustomerDirectory> T readCustomers(String fileName, T customers,
+      Set<String> shops) {
+    long start = customersTimer.start();
+    int size = customers.size();
+    long[] lines = new long[1];
+    forEachLine(fileName, fields -> {
+      lines[0]++;
+      RejectionReason reason = customerRejection(fields, shops);
+      if (Objects.isNull(reason) && !customers.add(fields.field(0), fields.field(1),
+          fields.field(2), fields.field(3))) {
+        reason = RejectionReason.CUSTOMER_DUPLICATE;
+      }
+      if (Objects.nonNull(reason)) {
+        rejections.reject(reason, fields);
+      }
+    });
+    customerLines.add(lines[0]);
+    customersAccepted.add(customers.size() - size);
+    customersTimer.stop(start);
+    return customers;
+  }
+
+  /**
+   * The reason to reject a customer line, {@code null} if its fields are valid. Duplicates are
+   * only found when the customer is added.
+   */
+  static RejectionReason customerRejection(FieldTokenizer fields, Set<String> shops) {
+    if (fields.fieldCount() != 4) {
+      return RejectionReason.CUSTOMER_FIELD_COUNT;
     }
-    String[] parts = line.split(";");
-    if (parts.length != 4) {
-      log.error(
-          "The provided line of customer data doesn't contain the required number of fields (4): " +
-              "{}",
-          line);
-      return false;
+    if (fields.isBlank(0)) {
+      return RejectionReason.CUSTOMER_EMPTY_SHOP_ID;
     }
-    if (parts[0].isBlank()) {
-      log.error("The shop identifier must not be empty");
-      return false;
+    if (fields.isBlank(1)) {
+      return RejectionReason.CUSTOMER_EMPTY_CUSTOMER_ID;
     }
-    if (parts[1].isBlank()) {
-      log.error("The customer identifier must not be empty");
-      return false;
+    if (fields.isBlank(2)) {
+      return RejectionReason.CUSTOMER_EMPTY_NAME;
     }
-    if (parts[2].isBlank()) {
-      log.error("The customer name must not be empty");
-      return false;
+    if (fields.isBlank(3)) {
+      return RejectionReason.CUSTOMER_EMPTY_ADDRESS;
     }
-    if (parts[3].isBlank()) {
-      log.error("The customer address must not be empty");
-      return false;
+    if (!shops.contains(fields.field(0))) {
+      return RejectionReason.CUSTOMER_UNKNOWN_SHOP;
     }
+    return null;
+  }
 
-    if (!parts[0].equals("WS01") && !parts[0].equals("WS02")) {
-      log.error("The shop identifier is none of the allowed ones: {}", line);
-      return false;
-    }
+  public static List<Payment> readPayments(List<Customer> customers) {
+    return readPayments(new CustomerIndex(customers));
+  }
 
-    if (Objects.isNull(customersByShop.get(parts[0]))) {
-      customersByShop.put(parts[0], new ArrayList<>());
-    }
+  public static List<Payment> readPayments(CustomerDirectory customers) {
+    List<Payment> payments = new ArrayList<>();
+    readPayments(customers, payments::add);
+    return payments;
+  }
 
-    if (customersByShop.get(parts[0]).contains(parts[1])) {
-      log.error("The customer id {} for the given shop id {} is not unique!", parts[1], parts[0]);
-      return false;
-    } else {
-      customersByShop.get(parts[0]).add(parts[1]);
-    }
+  public static void readPayments(CustomerDirectory customers, Consumer<Payment> consumer) {
+    readPayments(PAYMENTS_FILE, customers, consumer);
+  }
 
-    return true;
+  public static void readPayments(String fileName, CustomerDirectory customers,
+      Consumer<Payment> consumer) {
+    long start = paymentsTimer.start();
+    PaymentLines lines = new PaymentLines(customers, consumer);
+    forEachLine(fileName, lines);
+    lines.count();
+    paymentsTimer.stop(start);
   }
 
-  public static List<Payment> readPayments(List<Customer> customers) {
-    List<String> paymentLines = getContent("src/main/resources/csv/payments.csv");
-    List<Payment> payments = new ArrayList<>();
-    for (String line : paymentLines) {
-      if (validPaymentData(line, customers)) {
-        payments.add(createPayment(line));
-      }
+  public static void readPayments(FileChannel channel, long start, long end,
+      CustomerDirectory customers, Consumer<Payment> consumer) throws IOException {
+    long startTime = paymentsTimer.start();
+    PaymentLines lines = new PaymentLines(customers, consumer);
+    try {
+      MappedCsvReader.read(channel, start, end, SEPARATOR, lines);
+    } finally {
+      lines.count();
+      paymentsTimer.stop(startTime);
     }
-    return payments;
   }
 
-  private static Payment createPayment(String line) {
-    String[] parts = line.split(";");
-    Payment payment = new Payment();
-    payment.setShopId(parts[0]);
-    payment.setCustomerId(parts[1]);
-    payment.setType((PaymentType.getByValue(parts[2]).get()));
-    payment.setAmount(new BigDecimal(parts[3]));
-    payment.setBankAccount(parts[4]);
-    payment.setCardNumber(parts[5]);
-    payment.setPaymentDate(LocalDate.parse(parts[6], DateTimeFormatter.ofPattern("yyyy.MM.dd")));
-    return payment;
+  public static void readPayments(ByteBuffer buffer, int start, int end,
+      CustomerDirectory customers, Consumer<Payment> consumer) {
+    long startTime = paymentsTimer.start();
+    PaymentLines lines = new PaymentLines(customers, consumer);
+    MappedCsvReader.read(buffer, start, end, SEPARATOR, lines);
+    lines.count();
+    paymentsTimer.stop(startTime);
   }
 
-  private static boolean validPaymentData(String line, List<Customer> customers) {
-    if (Objects.isNull(line)) {
-      log.error("The provided line of payments is null");
-      return false;
-    }
-    String[] parts = line.split(";");
-    if (parts.length != 7) {
-      log.error(
-          "The provided line of payment data doesn't contain the required number of fields (7): {}",
-          line);
-      return false;
+  /**
+   * Parses a single payment line, e.g. one appended to a running {@link ReportServer}. A rejected
+   * line is reported like the ones of the files and gives {@code null}.
+   */
+  public static Payment parsePayment(String line, CustomerDirectory customers) {
+    return parsePayment(new LineTokenizer(SEPARATOR).reset(line), customers);
+  }
+
+  static Payment parsePayment(FieldTokenizer fields, CustomerDirectory customers) {
+    if (fields.fieldCount() != 7) {
+      rejections.reject(RejectionReason.PAYMENT_FIELD_COUNT, fields);
+      return null;
     }
-    if (parts[0].isBlank()) {
-      log.error("The shop identifier must not be empty");
-      return false;
+    if (fields.isBlank(0)) {
+      rejections.reject(RejectionReason.PAYMENT_EMPTY_SHOP_ID, fields);
+      return null;
     }
-    if (parts[1].isBlank()) {
-      log.error("The customer identifier must not be empty");
-      return false;
+    if (fields.isBlank(1)) {
+      rejections.reject(RejectionReason.PAYMENT_EMPTY_CUSTOMER_ID, fields);
+      return null;
     }
-    if (parts[2].isBlank()) {
-      log.error("The payment method must not be empty");
-      return false;
+    if (fields.isBlank(2)) {
+      rejections.reject(RejectionReason.PAYMENT_EMPTY_TYPE, fields);
+      return null;
     }
-    if (parts[3].isBlank()) {
-      log.error("The paid amount must not be empty");
-      return false;
+    if (fields.isBlank(3)) {
+      rejections.reject(RejectionReason.PAYMENT_EMPTY_AMOUNT, fields);
+      return null;
     }
-    if (parts[6].isBlank()) {
-      log.error("The date of transaction must not be empty");
-      return false;
+    if (fields.isBlank(6)) {
+      rejections.reject(RejectionReason.PAYMENT_EMPTY_DATE, fields);
+      return null;
     }
-    if (invalidCustomer(parts[0], parts[1], customers)) {
-      log.error("The provided customer doesn't exist with shop id = {} and customer id = {}",
-          parts[0], parts[1]);
-      return false;
+    int customerIndex = customers.indexOf(fields, 0, 1);
+    if (customerIndex < 0) {
+      rejections.reject(RejectionReason.PAYMENT_UNKNOWN_CUSTOMER, fields);
+      return null;
     }
-    Optional<PaymentType> paymentTypeFromInput = PaymentType.getByValue(parts[2]);
-    if (paymentTypeFromInput.isEmpty()) {
-      log.error("The provided payment type is invalid: {}", parts[2]);
-      return false;
+    PaymentType paymentType = paymentType(fields, 2);
+    if (Objects.isNull(paymentType)) {
+      rejections.reject(RejectionReason.PAYMENT_INVALID_TYPE, fields);
+      return null;
     }
-    PaymentType paymentType = paymentTypeFromInput.get();
-    if (paymentType == PaymentType.CARD && parts[5].isBlank()) {
-      log.error("No card number present for a payment by card.");
-      return false;
+    if (paymentType == PaymentType.CARD && fields.isBlank(5)) {
+      rejections.reject(RejectionReason.PAYMENT_MISSING_CARD_NUMBER, fields);
+      return null;
     }
-    if (paymentType == PaymentType.TRANSFER && parts[4].isBlank()) {
-      log.error("No account number present for a payment by transfer.");
-      return false;
+    if (paymentType == PaymentType.TRANSFER && fields.isBlank(4)) {
+      rejections.reject(RejectionReason.PAYMENT_MISSING_ACCOUNT_NUMBER, fields);
+      return null;
     }
+    Payment payment = new Payment();
     try {
-      new BigDecimal(parts[3]);
+      if (!parseAmount(fields, 3, payment)) {
+        rejections.reject(RejectionReason.PAYMENT_AMOUNT_OUT_OF_RANGE, fields);
+        return null;
+      }
     } catch (NumberFormatException e) {
-      log.error("The provided amount of the transaction is invalid: {}", parts[3]);
-      return false;
+      rejections.reject(RejectionReason.PAYMENT_INVALID_AMOUNT, fields);
+      return null;
     }
-    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+    LocalDate paymentDate;
     try {
-      LocalDate.parse(parts[6], formatter);
+      paymentDate = parseDate(fields, 6);
     } catch (DateTimeParseException e) {
-      log.error("The provided transaction date of the transaction is invalid: {}", parts[6]);
-      return false;
+      rejections.reject(RejectionReason.PAYMENT_INVALID_DATE, fields);
+      return null;
     }
-    return true;
+
+    payment.setCustomer(customers, customerIndex);
+    payment.setType(paymentType);
+    payment.setBankAccount(optionalField(fields, 4));
+    payment.setCardNumber(optionalField(fields, 5));
+    payment.setPaymentDate(paymentDate);
+    return payment;
   }
 
-  private static boolean invalidCustomer(String shopId, String customerId,
-      List<Customer> customers) {
-    for (Customer customer : customers) {
-      if (customer.getShopId().equals(shopId) && customer.getCustomerId().equals(customerId)) {
+  private static String optionalField(FieldTokenizer fields, int index) {
+    return fields.length(index) == 0 ? "" : fields.field(index);
+  }
+
+  private static boolean parseAmount(FieldTokenizer fields, int index, Payment payment) {
+    int length = fields.length(index);
+    int position = 0;
+    boolean negative = false;
+    if (length > 0 && (fields.charAt(index, 0) == '-' || fields.charAt(index, 0) == '+')) {
+      negative = fields.charAt(index, 0) == '-';
+      position = 1;
+    }
+    long units = 0;
+    int scale = -1;
+    int digits = 0;
+    try {
+      for (; position < length; position++) {
+        char c = fields.charAt(index, position);
+        if (c >= '0' && c <= '9') {
+          units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+          digits++;
+          if (scale >= 0) {
+            scale++;
+          }
+        } else if (c == '.' && scale < 0) {
+          scale = 0;
+        } else {
+          return parseDecimalAmount(fields, index, payment);
+        }
+      }
+    } catch (ArithmeticException e) {
+      return parseDecimalAmount(fields, index, payment);
+    }
+    if (digits == 0) {
+      return parseDecimalAmount(fields, index, payment);
+    }
+    scale = Math.max(scale, 0);
+    if (scale > FixedPoint.SCALE) {
+      long divisor = FixedPoint.powerOfTen(Math.min(scale - FixedPoint.SCALE, 18));
+      if (scale - FixedPoint.SCALE > 18 || units % divisor != 0) {
+        return parseDecimalAmount(fields, index, payment);
+      }
+      units /= divisor;
+    } else {
+      try {
+        units = Math.multiplyExact(units, FixedPoint.powerOfTen(FixedPoint.SCALE - scale));
+      } catch (ArithmeticException e) {
         return false;
       }
     }
+    payment.setAmount(negative ? -units : units, scale);
     return true;
   }
 
-  private static List<String> getContent(String fileName) {
-    List<String> content = new ArrayList<>();
-    try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        content.add(line);
+  private static boolean parseDecimalAmount(FieldTokenizer fields, int index, Payment payment) {
+    BigDecimal amount = fields.decimal(index);
+    if (!FixedPoint.fits(amount)) {
+      return false;
+    }
+    payment.setAmount(amount);
+    return true;
+  }
+
+  private static PaymentType paymentType(FieldTokenizer fields, int index) {
+    for (PaymentType type : PAYMENT_TYPES) {
+      if (fields.fieldEquals(index, type.getValue())) {
+        return type;
       }
+    }
+    return null;
+  }
+
+  private static LocalDate parseDate(FieldTokenizer fields, int index) {
+    if (fields.length(index) == 10 && fields.charAt(index, 4) == '.' &&
+        fields.charAt(index, 7) == '.') {
+      int year = fields.digits(index, 0, 4);
+      int month = fields.digits(index, 5, 7);
+      int day = fields.digits(index, 8, 10);
+      if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= 28) {
+        return LocalDate.of(year, month, day);
+      }
+    }
+    return LocalDate.parse(fields.field(index), PAYMENT_DATE_FORMAT);
+  }
+
+  /**
+   * Parses payment lines for a consumer, counting them locally and timing the parsing and the
+   * consumer on one line in {@value #TIMING_SAMPLE}.
+   */
+  private static class PaymentLines implements Consumer<FieldTokenizer> {
+    private final CustomerDirectory customers;
+    private final Consumer<Payment> consumer;
+    private long lines;
+    private long accepted;
+
+    private PaymentLines(CustomerDirectory customers, Consumer<Payment> consumer) {
+      this.customers = customers;
+      this.consumer = consumer;
+    }
+
+    @Override
+    public void accept(FieldTokenizer fields) {
+      if (lines++ % TIMING_SAMPLE == 0 && Metrics.ENABLED) {
+        acceptTimed(fields);
+        return;
+      }
+      Payment payment = parsePayment(fields, customers);
+      if (Objects.nonNull(payment)) {
+        accepted++;
+        consumer.accept(payment);
+      }
+    }
+
+    private void acceptTimed(FieldTokenizer fields) {
+      long start = System.nanoTime();
+      Payment payment = parsePayment(fields, customers);
+      long parsed = System.nanoTime();
+      parseTimer.record(parsed - start, TIMING_SAMPLE);
+      if (Objects.nonNull(payment)) {
+        accepted++;
+        consumer.accept(payment);
+        consumeTimer.record(System.nanoTime() - parsed, TIMING_SAMPLE);
+      }
+    }
+
+    private void count() {
+      paymentLines.add(lines);
+      paymentsAccepted.add(accepted);
+    }
+  }
+
+  private static void forEachLine(String fileName, Consumer<FieldTokenizer> consumer) {
+    try {
+      MappedCsvReader.read(fileName, SEPARATOR, consumer);
     } catch (IOException e) {
-      log.error("Error reading file {}: {}", fileName, e.getMessage());
-      return List.of();
+      throw new UncheckedIOException("Error reading file " + fileName, e);
     }
-    return content;
   }
 }
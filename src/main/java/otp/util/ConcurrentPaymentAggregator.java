@@ -0,0 +1,283 @@
+package otp.util;
+
+import otp.model.CustomerSum;
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import otp.model.WebShopSum;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Sums payments per customer and per shop from any number of producer threads, e.g. for payments
+ * that keep arriving from a feed instead of a file. Every producer thread is assigned one of the
+ * stripes: it adds to the customer totals with compare and set and to the shop totals of its own
+ * stripe, holding only the lock of that stripe, which no other producer normally wants. A
+ * {@link #snapshot()} takes all the stripe locks for the time of a copy, so it sees every payment
+ * either fully or not at all.
+ * <p>
+ * The best customers are only selected when {@link #getTopCustomers(int)} asks for them, from
+ * one pass over the customer totals, so keeping them costs the producers nothing.
+ */
+public class ConcurrentPaymentAggregator implements Consumer<Payment> {
+  public static final int DEFAULT_STRIPES =
+      Integer.highestOneBit(Math.max(16, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+  private static final AtomicInteger nextStripe = new AtomicInteger();
+  private static final ThreadLocal<Integer> threadStripe =
+      ThreadLocal.withInitial(nextStripe::getAndIncrement);
+
+  private final CustomerDirectory customers;
+  private final AtomicLongArray customerUnits;
+  private final AtomicIntegerArray customerScales;
+  private final Stripe[] stripes;
+  private final int shopCount;
+
+  public ConcurrentPaymentAggregator(CustomerDirectory customers) {
+    this(customers, DEFAULT_STRIPES);
+  }
+
+  public ConcurrentPaymentAggregator(CustomerDirectory customers, int stripes) {
+    if (stripes < 1) {
+      throw new IllegalArgumentException("The number of stripes must be positive: " + stripes);
+    }
+    this.customers = customers;
+    this.customerUnits = new AtomicLongArray(customers.size());
+    this.customerScales = new AtomicIntegerArray(customers.size());
+    this.shopCount = customers.getShopCount();
+    this.stripes = new Stripe[Integer.highestOneBit(stripes * 2 - 1)];
+    for (int i = 0; i < this.stripes.length; i++) {
+      this.stripes[i] = new Stripe(PAYMENT_TYPES.length * shopCount);
+    }
+  }
+
+  public void add(Payment payment) {
+    int customerIndex = customers.indexOf(payment);
+    int shopIndex = customerIndex >= 0 ? customers.getShopIndex(customerIndex) :
+        customers.shopIndexOf(payment.getShopId());
+    add(customerIndex, shopIndex, payment.getType(), payment.getAmountUnits(),
+        payment.getAmountScale());
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    add(payment);
+  }
+
+  void add(int customerIndex, int shopIndex, PaymentType type, long units, int scale) {
+    Stripe stripe = stripes[threadStripe.get() & stripes.length - 1];
+    stripe.lock.lock();
+    try {
+      if (customerIndex >= 0) {
+        addCustomer(customerIndex, units, scale);
+      }
+      if (shopIndex >= 0) {
+        stripe.add(type.ordinal() * shopCount + shopIndex, units, scale);
+      }
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Adds the totals of another aggregator, e.g. of the payments loaded before the feed started.
+   */
+  public void add(PaymentAggregator totals) {
+    Stripe stripe = stripes[threadStripe.get() & stripes.length - 1];
+    stripe.lock.lock();
+    try {
+      AmountTotals customerTotals = totals.getCustomerTotals();
+      for (int i = 0; i < Math.min(customerTotals.size(), customerUnits.length()); i++) {
+        if (customerTotals.getUnits(i) != 0 || customerTotals.getScale(i) != 0) {
+          addCustomer(i, customerTotals.getUnits(i), customerTotals.getScale(i));
+        }
+      }
+      for (PaymentType type : PAYMENT_TYPES) {
+        AmountTotals shopTotals = totals.getShopTotals(type);
+        for (int shop = 0; shop < Math.min(shopTotals.size(), shopCount); shop++) {
+          if (shopTotals.getUnits(shop) != 0 || shopTotals.getScale(shop) != 0) {
+            stripe.add(type.ordinal() * shopCount + shop, shopTotals.getUnits(shop),
+                shopTotals.getScale(shop));
+          }
+        }
+      }
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Adds to the customer's total without a lock of its own. The scale is raised before the units
+   * change, and the readers read the units first, so they never see units finer than the scale.
+   */
+  private void addCustomer(int index, long units, int scale) {
+    if (scale > customerScales.get(index)) {
+      customerScales.accumulateAndGet(index, scale, Math::max);
+    }
+    long current;
+    do {
+      current = customerUnits.get(index);
+    } while (!customerUnits.compareAndSet(index, current, FixedPoint.add(current, units)));
+  }
+
+  public CustomerDirectory getCustomers() {
+    return customers;
+  }
+
+  /**
+   * The totals of all the payments added so far. The reports of one moment should come from the
+   * same snapshot, {@link #getCustomerSums()} and the like take a new one on every call.
+   */
+  public PaymentAggregator snapshot() {
+    PaymentAggregator snapshot = new PaymentAggregator(customers);
+    AmountTotals customerTotals = snapshot.getCustomerTotals();
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+    }
+    try {
+      for (int i = 0; i < customerUnits.length(); i++) {
+        long units = customerUnits.get(i);
+        int scale = customerScales.get(i);
+        if (units != 0 || scale != 0) {
+          customerTotals.add(i, units, scale);
+        }
+      }
+      for (Stripe stripe : stripes) {
+        for (PaymentType type : PAYMENT_TYPES) {
+          AmountTotals shopTotals = snapshot.getShopTotals(type);
+          for (int shop = 0; shop < shopCount; shop++) {
+            int index = Stripe.PADDING + type.ordinal() * shopCount + shop;
+            if (stripe.units[index] != 0 || stripe.scales[index] != 0) {
+              shopTotals.add(shop, stripe.units[index], stripe.scales[index]);
+            }
+          }
+        }
+      }
+    } finally {
+      for (Stripe stripe : stripes) {
+        stripe.lock.unlock();
+      }
+    }
+    return snapshot;
+  }
+
+  public List<CustomerSum> getCustomerSums() {
+    return snapshot().getCustomerSums();
+  }
+
+  /**
+   * The total of one customer without a snapshot, for point lookups.
+   */
+  public AmountTotal getCustomerTotal(int customerIndex) {
+    AmountTotal total = new AmountTotal();
+    long units = customerUnits.get(customerIndex);
+    total.add(units, customerScales.get(customerIndex));
+    return total;
+  }
+
+  /**
+   * The total of one shop and payment type without a snapshot, for point lookups.
+   */
+  public AmountTotal getShopTotal(int shopIndex, PaymentType type) {
+    AmountTotal total = new AmountTotal();
+    int index = Stripe.PADDING + type.ordinal() * shopCount + shopIndex;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        total.add(stripe.units[index], stripe.scales[index]);
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * The shop sums of one moment, without copying the customer totals.
+   */
+  public List<WebShopSum> getShopSums() {
+    AmountTotal[] totals = new AmountTotal[PAYMENT_TYPES.length * shopCount];
+    for (int i = 0; i < totals.length; i++) {
+      totals[i] = new AmountTotal();
+    }
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+    }
+    try {
+      for (Stripe stripe : stripes) {
+        for (int i = 0; i < totals.length; i++) {
+          totals[i].add(stripe.units[Stripe.PADDING + i], stripe.scales[Stripe.PADDING + i]);
+        }
+      }
+    } finally {
+      for (Stripe stripe : stripes) {
+        stripe.lock.unlock();
+      }
+    }
+    List<WebShopSum> webShopSums = new ArrayList<>(shopCount);
+    for (String webshop : customers.getShopIds()) {
+      int index = customers.shopIndexOf(webshop);
+      AmountTotal card = totals[PaymentType.CARD.ordinal() * shopCount + index];
+      AmountTotal transfer = totals[PaymentType.TRANSFER.ordinal() * shopCount + index];
+      webShopSums.add(new WebShopSum(webshop, card.getUnits(), card.getScale(),
+          transfer.getUnits(), transfer.getScale()));
+    }
+    return webShopSums;
+  }
+
+  /**
+   * The best customers, selected from the current totals without a snapshot. Every total is read
+   * once, before its scale, so the selection is consistent while the producers keep adding.
+   */
+  public List<CustomerSum> getTopCustomers(int numberOfCustomers) {
+    long[] units = new long[customerUnits.length()];
+    for (int i = 0; i < units.length; i++) {
+      units[i] = customerUnits.get(i);
+    }
+    TopNSelector<Integer> selector = new TopNSelector<>(numberOfCustomers, (i, j) -> {
+      int result = Long.compare(units[j], units[i]);
+      return result != 0 ? result : Integer.compare(i, j);
+    });
+    for (int i = 0; i < units.length; i++) {
+      if (selector.size() < numberOfCustomers || units[i] > units[selector.last()]) {
+        selector.offer(i);
+      }
+    }
+    List<CustomerSum> customerSums = new ArrayList<>(selector.size());
+    for (Integer index : selector.getTop()) {
+      customerSums.add(new CustomerSum(customers.getName(index), customers.getAddress(index),
+          units[index], customerScales.get(index)));
+    }
+    return customerSums;
+  }
+
+  /**
+   * The shop totals of the producers sharing a stripe, padded so that the stripes of different
+   * producers don't share cache lines.
+   */
+  private static class Stripe {
+    private static final int PADDING = 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] units;
+    private final int[] scales;
+
+    private Stripe(int size) {
+      units = new long[size + 2 * PADDING];
+      scales = new int[size + 2 * PADDING];
+    }
+
+    private void add(int index, long units, int scale) {
+      index += PADDING;
+      this.units[index] = FixedPoint.add(this.units[index], units);
+      if (scale > scales[index]) {
+        scales[index] = scale;
+      }
+    }
+  }
+}
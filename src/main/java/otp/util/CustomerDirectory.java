@@ -0,0 +1,51 @@
+package otp.util;
+
+import otp.model.CustomerLookup;
+import otp.model.Payment;
+import java.util.SortedSet;
+
+/**
+ * The customers the payments are validated against and reported on, with the dense customer and
+ * shop indices the aggregation uses. {@link CustomerIndex} keeps them on the heap,
+ * {@link OffHeapCustomerDirectory} outside of it for very large customer bases.
+ */
+public interface CustomerDirectory extends CustomerLookup {
+  /**
+   * Adds a customer unless the shop already has a customer with the same id.
+   */
+  boolean add(String shopId, String customerId, String name, String address);
+
+  int size();
+
+  /**
+   * Returns the index of the customer, or -1 if there's no such customer.
+   */
+  int indexOf(String shopId, String customerId);
+
+  /**
+   * Returns the index of the customer whose shop and customer id are the given fields of the
+   * line, or -1 if there's no such customer. Implementations look the fields up in place.
+   */
+  default int indexOf(FieldTokenizer fields, int shopField, int customerField) {
+    return indexOf(fields.field(shopField), fields.field(customerField));
+  }
+
+  int indexOf(Payment payment);
+
+  /**
+   * Returns the index of the shop, or -1 if no customer belongs to it.
+   */
+  int shopIndexOf(String shopId);
+
+  int getShopIndex(int customerIndex);
+
+  String getShopId(int shopIndex);
+
+  int getShopCount();
+
+  SortedSet<String> getShopIds();
+
+  String getName(int index);
+
+  String getAddress(int index);
+}
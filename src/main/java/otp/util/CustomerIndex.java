@@ -0,0 +1,200 @@
+package otp.util;
+
+import otp.model.Customer;
+import otp.model.Payment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+
+/**
+ * Customers keyed by (shopId, customerId) for constant time lookups, keeping the load order.
+ * Doubles as the symbol table of the identifiers: customers and shops get dense indices in the
+ * order they were added, so the aggregation can use arrays instead of maps, and every customer
+ * shares the same shopId instance. The keys lead to the customers through an open addressing
+ * table, which payment lines can also be looked up in without creating the identifiers.
+ */
+public class CustomerIndex implements CustomerDirectory {
+  private final List<Customer> customers = new ArrayList<>();
+  private final ShopTable shops = new ShopTable();
+  private int[] customerShops = new int[16];
+  private int[] table = new int[32];
+  private int mask = 15;
+
+  public CustomerIndex() {
+  }
+
+  public CustomerIndex(List<Customer> customers) {
+    for (Customer customer : customers) {
+      add(customer);
+    }
+  }
+
+  @Override
+  public boolean add(String shopId, String customerId, String name, String address) {
+    Customer customer = new Customer();
+    customer.setShopId(shopId);
+    customer.setCustomerId(customerId);
+    customer.setName(name);
+    customer.setAddress(address);
+    return add(customer);
+  }
+
+  public boolean add(Customer customer) {
+    int shopIndex = shops.add(customer.getShopId());
+    int hash = hash(shopIndex, customer.getCustomerId().hashCode());
+    int slot = find(hash, shopIndex, customer.getCustomerId());
+    if (table[slot * 2 + 1] != 0) {
+      return false;
+    }
+    int index = customers.size();
+    customer.setShopId(shops.get(shopIndex));
+    customers.add(customer);
+    if (index == customerShops.length) {
+      customerShops = Arrays.copyOf(customerShops, index * 2);
+    }
+    customerShops[index] = shopIndex;
+    table[slot * 2] = hash;
+    table[slot * 2 + 1] = index + 1;
+    if ((index + 1) * 2 > mask + 1) {
+      rehash();
+    }
+    return true;
+  }
+
+  private static int hash(int shopIndex, int customerIdHash) {
+    return ShopTable.mix(customerIdHash * 31 + shopIndex);
+  }
+
+  private int find(int hash, int shopIndex, String customerId) {
+    int slot = hash & mask;
+    while (true) {
+      int ref = table[slot * 2 + 1];
+      if (ref == 0 || table[slot * 2] == hash && customerShops[ref - 1] == shopIndex &&
+          customers.get(ref - 1).getCustomerId().equals(customerId)) {
+        return slot;
+      }
+      slot = slot + 1 & mask;
+    }
+  }
+
+  private void rehash() {
+    int[] old = table;
+    table = new int[old.length * 2];
+    mask = mask * 2 + 1;
+    for (int i = 0; i < old.length; i += 2) {
+      if (old[i + 1] != 0) {
+        int slot = old[i] & mask;
+        while (table[slot * 2 + 1] != 0) {
+          slot = slot + 1 & mask;
+        }
+        table[slot * 2] = old[i];
+        table[slot * 2 + 1] = old[i + 1];
+      }
+    }
+  }
+
+  public Customer get(String shopId, String customerId) {
+    int index = indexOf(shopId, customerId);
+    return index < 0 ? null : customers.get(index);
+  }
+
+  public Customer get(int index) {
+    return customers.get(index);
+  }
+
+  @Override
+  public int indexOf(String shopId, String customerId) {
+    int shopIndex = shops.indexOf(shopId);
+    if (shopIndex < 0 || Objects.isNull(customerId)) {
+      return -1;
+    }
+    return table[find(hash(shopIndex, customerId.hashCode()), shopIndex, customerId) * 2 + 1] - 1;
+  }
+
+  @Override
+  public int indexOf(FieldTokenizer fields, int shopField, int customerField) {
+    int shopIndex = shops.indexOf(fields, shopField);
+    if (shopIndex < 0) {
+      return -1;
+    }
+    int hash = hash(shopIndex, fields.hash(customerField));
+    int slot = hash & mask;
+    while (true) {
+      int ref = table[slot * 2 + 1];
+      if (ref == 0 || table[slot * 2] == hash && customerShops[ref - 1] == shopIndex &&
+          fields.fieldEquals(customerField, customers.get(ref - 1).getCustomerId())) {
+        return ref - 1;
+      }
+      slot = slot + 1 & mask;
+    }
+  }
+
+  @Override
+  public int indexOf(Payment payment) {
+    if (payment.getCustomers() == this) {
+      return payment.getCustomerIndex();
+    }
+    return indexOf(payment.getShopId(), payment.getCustomerId());
+  }
+
+  public boolean contains(String shopId, String customerId) {
+    return indexOf(shopId, customerId) >= 0;
+  }
+
+  @Override
+  public int shopIndexOf(String shopId) {
+    return shops.indexOf(shopId);
+  }
+
+  @Override
+  public int getShopIndex(int customerIndex) {
+    return customerShops[customerIndex];
+  }
+
+  @Override
+  public String getShopId(int shopIndex) {
+    return shops.get(shopIndex);
+  }
+
+  @Override
+  public String getCustomerShopId(int index) {
+    return customers.get(index).getShopId();
+  }
+
+  @Override
+  public String getCustomerId(int index) {
+    return customers.get(index).getCustomerId();
+  }
+
+  @Override
+  public String getName(int index) {
+    return customers.get(index).getName();
+  }
+
+  @Override
+  public String getAddress(int index) {
+    return customers.get(index).getAddress();
+  }
+
+  @Override
+  public int getShopCount() {
+    return shops.size();
+  }
+
+  public List<Customer> getCustomers() {
+    return Collections.unmodifiableList(customers);
+  }
+
+  @Override
+  public SortedSet<String> getShopIds() {
+    return shops.sorted();
+  }
+
+  @Override
+  public int size() {
+    return customers.size();
+  }
+}
@@ -0,0 +1,48 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sums the payments per payment date: one {@code date;sum} line per day with payments, in date
+ * order.
+ */
+public class DailyReportStage implements ReportStage {
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
+  private final Map<Integer, AmountTotal> totals = new HashMap<>();
+
+  @Override
+  public void accept(Payment payment) {
+    totals.computeIfAbsent(payment.getPaymentDay(), day -> new AmountTotal())
+        .add(payment.getAmountUnits(), payment.getAmountScale());
+  }
+
+  @Override
+  public ReportStage newPartial() {
+    return new DailyReportStage();
+  }
+
+  @Override
+  public void merge(ReportStage other) {
+    ((DailyReportStage) other).totals.forEach((day, total) ->
+        totals.computeIfAbsent(day, newDay -> new AmountTotal()).add(total));
+  }
+
+  @Override
+  public void write(String fileName) {
+    List<String> reportLines = new ArrayList<>(totals.size());
+    for (Map.Entry<Integer, AmountTotal> entry : new TreeMap<>(totals).entrySet()) {
+      reportLines.add(LocalDate.ofEpochDay(entry.getKey()).format(DATE_FORMAT) + ";" +
+          FixedPoint.toBigDecimal(entry.getValue().getUnits(), entry.getValue().getScale()));
+    }
+    ReportUtil.writeReport(reportLines, fileName, "daily payments");
+  }
+}
@@ -0,0 +1,73 @@
+package otp.util;
+
+import otp.model.Payment;
+import otp.model.PaymentType;
+
+/**
+ * Sums payments per customer and per shop and payment type for every payment day, so that
+ * {@link #getIndex()} can answer the totals of any date range without another pass over the
+ * payments.
+ */
+public class DateRangeAggregator implements PaymentSink<DateRangeAggregator> {
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+
+  private final CustomerDirectory customers;
+  private final DayBuckets customerDays = new DayBuckets();
+  private final DayBuckets[] shopDays = new DayBuckets[PAYMENT_TYPES.length];
+
+  public DateRangeAggregator(CustomerDirectory customers) {
+    this.customers = customers;
+    for (int i = 0; i < shopDays.length; i++) {
+      shopDays[i] = new DayBuckets();
+    }
+  }
+
+  public void add(Payment payment) {
+    if (payment.getPaymentDay() == Payment.NO_DATE) {
+      return;
+    }
+    int customerIndex = customers.indexOf(payment);
+    int shopIndex = customerIndex >= 0 ? customers.getShopIndex(customerIndex) :
+        customers.shopIndexOf(payment.getShopId());
+    if (customerIndex >= 0) {
+      customerDays.add(customerIndex, payment.getPaymentDay(), payment.getAmountUnits(),
+          payment.getAmountScale());
+    }
+    if (shopIndex >= 0) {
+      shopDays[payment.getType().ordinal()].add(shopIndex, payment.getPaymentDay(),
+          payment.getAmountUnits(), payment.getAmountScale());
+    }
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    add(payment);
+  }
+
+  public void addAll(Iterable<Payment> payments) {
+    for (Payment payment : payments) {
+      add(payment);
+    }
+  }
+
+  @Override
+  public DateRangeAggregator newPartial() {
+    return new DateRangeAggregator(customers);
+  }
+
+  @Override
+  public void merge(DateRangeAggregator other) {
+    customerDays.merge(other.customerDays);
+    for (int i = 0; i < shopDays.length; i++) {
+      shopDays[i].merge(other.shopDays[i]);
+    }
+  }
+
+  public CustomerDirectory getCustomers() {
+    return customers;
+  }
+
+  public DateRangeIndex getIndex() {
+    return new DateRangeIndex(customers, customerDays, shopDays);
+  }
+}
@@ -0,0 +1,155 @@
+package otp.util;
+
+import otp.model.CustomerSum;
+import otp.model.FixedPoint;
+import otp.model.PaymentType;
+import otp.model.WebShopSum;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Customer and shop totals of any {@code [from, to]} range of payment days. The days of every
+ * customer and shop are kept sorted with the running sums of their amounts, so a range is two
+ * binary searches and a subtraction; the scale of the range comes from a max segment tree over
+ * the same days. A {@code null} bound leaves that end of the range open.
+ */
+public class DateRangeIndex {
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+
+  private final CustomerDirectory customers;
+  private final Series customerSeries;
+  private final Series[] shopSeries = new Series[PAYMENT_TYPES.length];
+
+  DateRangeIndex(CustomerDirectory customers, DayBuckets customerDays, DayBuckets[] shopDays) {
+    this.customers = customers;
+    this.customerSeries = new Series(customerDays, customers.size());
+    for (int i = 0; i < shopSeries.length; i++) {
+      shopSeries[i] = new Series(shopDays[i], customers.getShopCount());
+    }
+  }
+
+  public CustomerDirectory getCustomers() {
+    return customers;
+  }
+
+  public AmountTotal getCustomerTotal(int customerIndex, LocalDate from, LocalDate to) {
+    AmountTotal total = new AmountTotal();
+    customerSeries.addTotal(customerIndex, fromDay(from), toDay(to), total);
+    return total;
+  }
+
+  public AmountTotal getShopTotal(int shopIndex, PaymentType type, LocalDate from, LocalDate to) {
+    AmountTotal total = new AmountTotal();
+    shopSeries[type.ordinal()].addTotal(shopIndex, fromDay(from), toDay(to), total);
+    return total;
+  }
+
+  public List<CustomerSum> getCustomerSums(LocalDate from, LocalDate to) {
+    List<CustomerSum> customerSums = new ArrayList<>(customers.size());
+    for (int i = 0; i < customers.size(); i++) {
+      AmountTotal total = getCustomerTotal(i, from, to);
+      customerSums.add(new CustomerSum(customers.getName(i), customers.getAddress(i),
+          total.getUnits(), total.getScale()));
+    }
+    return customerSums;
+  }
+
+  public List<WebShopSum> getShopSums(LocalDate from, LocalDate to) {
+    List<WebShopSum> webShopSums = new ArrayList<>(customers.getShopCount());
+    for (String webshop : customers.getShopIds()) {
+      int index = customers.shopIndexOf(webshop);
+      AmountTotal cardTotal = getShopTotal(index, PaymentType.CARD, from, to);
+      AmountTotal transferTotal = getShopTotal(index, PaymentType.TRANSFER, from, to);
+      webShopSums.add(new WebShopSum(webshop, cardTotal.getUnits(), cardTotal.getScale(),
+          transferTotal.getUnits(), transferTotal.getScale()));
+    }
+    return webShopSums;
+  }
+
+  private static long fromDay(LocalDate from) {
+    return Objects.isNull(from) ? Integer.MIN_VALUE : from.toEpochDay();
+  }
+
+  private static long toDay(LocalDate to) {
+    return Objects.isNull(to) ? Integer.MAX_VALUE : to.toEpochDay();
+  }
+
+  /**
+   * The days of all owners in one array, ordered by owner and day, with {@code starts[owner]}
+   * pointing at the first day of each owner.
+   */
+  private static class Series {
+    private final int[] starts;
+    private final int[] days;
+    private final long[] runningUnits;
+    private final byte[] maxScales;
+
+    private Series(DayBuckets buckets, int owners) {
+      long[] keys = buckets.sortedKeys();
+      int size = keys.length;
+      int ownerCount = size > 0 ?
+          Math.max(owners, DayBuckets.owner(keys[size - 1]) + 1) : owners;
+      starts = new int[ownerCount + 1];
+      days = new int[size];
+      runningUnits = new long[size];
+      maxScales = new byte[2 * size];
+      for (int i = 0; i < size; i++) {
+        int owner = DayBuckets.owner(keys[i]);
+        starts[owner + 1]++;
+        days[i] = DayBuckets.day(keys[i]);
+        long units = buckets.getUnits(keys[i]);
+        runningUnits[i] = i > 0 && DayBuckets.owner(keys[i - 1]) == owner ?
+            FixedPoint.add(runningUnits[i - 1], units) : units;
+        maxScales[size + i] = (byte) buckets.getScale(keys[i]);
+      }
+      for (int owner = 0; owner < ownerCount; owner++) {
+        starts[owner + 1] += starts[owner];
+      }
+      for (int i = size - 1; i > 0; i--) {
+        maxScales[i] = (byte) Math.max(maxScales[2 * i], maxScales[2 * i + 1]);
+      }
+    }
+
+    private void addTotal(int owner, long fromDay, long toDay, AmountTotal total) {
+      if (owner < 0 || owner >= starts.length - 1 || fromDay > toDay) {
+        return;
+      }
+      int start = starts[owner];
+      int from = firstDayIndex(start, starts[owner + 1], fromDay);
+      int to = firstDayIndex(from, starts[owner + 1], toDay + 1);
+      if (from == to) {
+        return;
+      }
+      long units = from > start ? Math.subtractExact(runningUnits[to - 1],
+          runningUnits[from - 1]) : runningUnits[to - 1];
+      total.add(units, maxScale(from, to));
+    }
+
+    private int firstDayIndex(int from, int to, long day) {
+      while (from < to) {
+        int middle = (from + to) >>> 1;
+        if (days[middle] < day) {
+          from = middle + 1;
+        } else {
+          to = middle;
+        }
+      }
+      return from;
+    }
+
+    private int maxScale(int from, int to) {
+      int scale = 0;
+      for (from += days.length, to += days.length; from < to; from >>= 1, to >>= 1) {
+        if ((from & 1) == 1) {
+          scale = Math.max(scale, maxScales[from++]);
+        }
+        if ((to & 1) == 1) {
+          scale = Math.max(scale, maxScales[--to]);
+        }
+      }
+      return scale;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package otp.util;
+
+import otp.model.Payment;
+import java.time.LocalDate;
+
+/**
+ * Base of the reports restricted to the payments of a {@code [from, to]} date range, computed
+ * from the {@link DateRangeIndex} of a {@link DateRangeAggregator}.
+ */
+public abstract class DateRangeReportStage implements ReportStage {
+  protected final DateRangeAggregator aggregator;
+  protected final LocalDate from;
+  protected final LocalDate to;
+
+  protected DateRangeReportStage(CustomerDirectory customers, LocalDate from, LocalDate to) {
+    this.aggregator = new DateRangeAggregator(customers);
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    aggregator.add(payment);
+  }
+
+  @Override
+  public void merge(ReportStage other) {
+    aggregator.merge(((DateRangeReportStage) other).aggregator);
+  }
+
+  public static class Customers extends DateRangeReportStage {
+    public Customers(CustomerDirectory customers, LocalDate from, LocalDate to) {
+      super(customers, from, to);
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new Customers(aggregator.getCustomers(), from, to);
+    }
+
+    @Override
+    public void write(String fileName) {
+      ReportUtil.writeCustomerReport(
+          ReportUtil.sumByCustomer(aggregator.getIndex(), from, to), fileName);
+    }
+  }
+
+  public static class WebShops extends DateRangeReportStage {
+    public WebShops(CustomerDirectory customers, LocalDate from, LocalDate to) {
+      super(customers, from, to);
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new WebShops(aggregator.getCustomers(), from, to);
+    }
+
+    @Override
+    public void write(String fileName) {
+      ReportUtil.writeWebShopReport(
+          ReportUtil.sumByWebShop(aggregator.getIndex(), from, to), fileName);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+import java.util.Arrays;
+
+/**
+ * Amount totals per (owner, epoch day) in an open addressing hash table of primitive arrays, the
+ * owner being a dense customer or shop index. Keys pack the owner into the high and the day into
+ * the low 32 bits so that sorting the keys orders them by owner, then by day.
+ */
+public class DayBuckets {
+  private static final long EMPTY = -1;
+
+  private long[] keys;
+  private long[] units;
+  private byte[] scales;
+  private int size;
+
+  public DayBuckets() {
+    this(64);
+  }
+
+  public DayBuckets(int capacity) {
+    int tableSize = Integer.highestOneBit(Math.max(capacity * 2 - 1, 16)) << 1;
+    keys = new long[tableSize];
+    Arrays.fill(keys, EMPTY);
+    units = new long[tableSize];
+    scales = new byte[tableSize];
+  }
+
+  public static long key(int owner, int day) {
+    return (long) owner << 32 | (day ^ Integer.MIN_VALUE) & 0xffffffffL;
+  }
+
+  public static int owner(long key) {
+    return (int) (key >>> 32);
+  }
+
+  public static int day(long key) {
+    return (int) key ^ Integer.MIN_VALUE;
+  }
+
+  public void add(int owner, int day, long units, int scale) {
+    add(key(owner, day), units, scale);
+  }
+
+  private void add(long key, long units, int scale) {
+    if (scale > Byte.MAX_VALUE) {
+      throw new IllegalArgumentException("The scale of the amount is too large: " + scale);
+    }
+    int slot = slot(key);
+    if (keys[slot] == EMPTY) {
+      if ((size + 1) * 2 > keys.length) {
+        rehash(keys.length * 2);
+        slot = slot(key);
+      }
+      keys[slot] = key;
+      size++;
+    }
+    this.units[slot] = FixedPoint.add(this.units[slot], units);
+    if (scale > scales[slot]) {
+      scales[slot] = (byte) scale;
+    }
+  }
+
+  public void merge(DayBuckets other) {
+    for (int i = 0; i < other.keys.length; i++) {
+      if (other.keys[i] != EMPTY) {
+        add(other.keys[i], other.units[i], other.scales[i]);
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long[] sortedKeys() {
+    long[] sorted = new long[size];
+    int count = 0;
+    for (long key : keys) {
+      if (key != EMPTY) {
+        sorted[count++] = key;
+      }
+    }
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  public long getUnits(long key) {
+    int slot = slot(key);
+    return keys[slot] == EMPTY ? 0 : units[slot];
+  }
+
+  public int getScale(long key) {
+    int slot = slot(key);
+    return keys[slot] == EMPTY ? 0 : scales[slot];
+  }
+
+  private int slot(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    int mask = keys.length - 1;
+    int slot = (int) (hash ^ hash >>> 32) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = slot + 1 & mask;
+    }
+    return slot;
+  }
+
+  private void rehash(int tableSize) {
+    long[] oldKeys = keys;
+    long[] oldUnits = units;
+    byte[] oldScales = scales;
+    keys = new long[tableSize];
+    Arrays.fill(keys, EMPTY);
+    units = new long[tableSize];
+    scales = new byte[tableSize];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = slot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        units[slot] = oldUnits[i];
+        scales[slot] = oldScales[i];
+      }
+    }
+  }
+}
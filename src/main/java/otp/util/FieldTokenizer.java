@@ -0,0 +1,123 @@
+package otp.util;
+
+import java.math.BigDecimal;
+
+/**
+ * A single line split into fields. Implementations only record the field boundaries and create
+ * objects for the fields the caller actually asks for.
+ *
+ * <p>Trailing empty fields are dropped the same way {@link String#split(String)} drops them.
+ * {@link #charAt(int, int)} returns {@link #NON_ASCII} for positions that can't be represented by
+ * a single char of the field, the helpers here then fall back to {@link #field(int)}.
+ */
+public abstract class FieldTokenizer {
+  public static final char NON_ASCII = '\uFFFF';
+
+  protected int[] starts = new int[8];
+  protected int[] ends = new int[8];
+  protected int fieldCount;
+  private char[] scratch = new char[32];
+
+  public abstract String line();
+
+  public abstract String field(int index);
+
+  public abstract boolean isBlank(int index);
+
+  public abstract char charAt(int index, int offset);
+
+  public int fieldCount() {
+    return fieldCount;
+  }
+
+  public int length(int index) {
+    return ends[index] - starts[index];
+  }
+
+  /**
+   * Compares the field with the value without creating it. {@link #length(int)} may count more
+   * positions than the field has chars, never fewer.
+   */
+  public boolean fieldEquals(int index, String value) {
+    int length = length(index);
+    if (length < value.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = charAt(index, i);
+      if (c == NON_ASCII) {
+        return field(index).equals(value);
+      }
+      if (i == value.length() || c != value.charAt(i)) {
+        return false;
+      }
+    }
+    return length == value.length();
+  }
+
+  /**
+   * Returns the {@link String#hashCode()} of the field without creating it.
+   */
+  public int hash(int index) {
+    int length = length(index);
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      char c = charAt(index, i);
+      if (c == NON_ASCII) {
+        return field(index).hashCode();
+      }
+      hash = 31 * hash + c;
+    }
+    return hash;
+  }
+
+  public BigDecimal decimal(int index) {
+    int length = length(index);
+    if (length > scratch.length) {
+      scratch = new char[Math.max(length, scratch.length * 2)];
+    }
+    for (int i = 0; i < length; i++) {
+      char c = charAt(index, i);
+      if (c == NON_ASCII) {
+        return new BigDecimal(field(index));
+      }
+      scratch[i] = c;
+    }
+    return new BigDecimal(scratch, 0, length);
+  }
+
+  public int digits(int index, int from, int to) {
+    int result = 0;
+    for (int i = from; i < to; i++) {
+      char c = charAt(index, i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  protected void addField(int start, int end) {
+    if (fieldCount == starts.length) {
+      int[] newStarts = new int[starts.length * 2];
+      int[] newEnds = new int[ends.length * 2];
+      System.arraycopy(starts, 0, newStarts, 0, starts.length);
+      System.arraycopy(ends, 0, newEnds, 0, ends.length);
+      starts = newStarts;
+      ends = newEnds;
+    }
+    starts[fieldCount] = start;
+    ends[fieldCount] = end;
+    fieldCount++;
+  }
+
+  protected void dropTrailingEmptyFields(boolean emptyLine) {
+    while (fieldCount > 1 && starts[fieldCount - 1] == ends[fieldCount - 1]) {
+      fieldCount--;
+    }
+    if (fieldCount == 1 && !emptyLine && starts[0] == ends[0]) {
+      fieldCount = 0;
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package otp.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otp.model.FixedPoint;
+import otp.model.PaymentType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the aggregates of an append-only payments file between runs. The state file stores the
+ * customer and shop totals together with the number of payment bytes already consumed, so a
+ * later run only parses the lines appended since. The state is discarded, and everything is
+ * read again, whenever the customer file, the loaded customers (e.g. through a different shop
+ * setting), the amount precision or the already consumed part of the payments file changed.
+ */
+public class IncrementalUtil {
+  public static final String STATE_FILE = "src/reports/aggregates.state";
+  private static final Logger log = LogManager.getLogger(IncrementalUtil.class);
+  private static final int MAGIC = 0x4f545041;
+  private static final int VERSION = 2;
+  private static final int CHECKSUM_WINDOW = 4096;
+
+  private IncrementalUtil() {
+    throw new UnsupportedOperationException("This is a util class!");
+  }
+
+  /**
+   * Returns the totals of all the payments, reading those appended since the saved state with
+   * {@code threads} threads. A read error is thrown as an {@link UncheckedIOException} and
+   * leaves the state as it was, so the next run reads the same payments again.
+   */
+  public static PaymentAggregator aggregate(String customersFile, CustomerDirectory customers,
+      String paymentsFile, String stateFile, int threads) {
+    PaymentAggregator aggregator = new PaymentAggregator(customers);
+    try (FileChannel payments =
+             FileChannel.open(Paths.get(paymentsFile), StandardOpenOption.READ)) {
+      long customersFingerprint =
+          fingerprint(Paths.get(customersFile)) * 31 + fingerprint(customers);
+      long consumed = 0;
+      State state = load(stateFile, customers);
+      if (Objects.nonNull(state) && state.customersFingerprint == customersFingerprint &&
+          state.offset <= payments.size() && state.checksum == checksum(payments, state.offset)) {
+        consumed = state.offset;
+        aggregator = state.aggregator;
+      } else if (Objects.nonNull(state)) {
+        log.info("The inputs changed since the last run, reading all payments again");
+      }
+
+      long end = lastLineEnd(payments, consumed);
+      log.info("Reading payments of {} from byte {} to {}", paymentsFile, consumed, end);
+      ParallelPaymentReader reader = new ParallelPaymentReader(threads);
+      aggregator.merge(reader.readPayments(paymentsFile, consumed, end, customers));
+      try {
+        save(stateFile, aggregator, customersFingerprint, end, checksum(payments, end));
+      } catch (IOException e) {
+        log.error("Error saving the aggregate state {}: {}", stateFile, e.getMessage());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error reading file " + paymentsFile, e);
+    }
+    return aggregator;
+  }
+
+  private static long lastLineEnd(FileChannel channel, long from) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_WINDOW);
+    long end = channel.size();
+    while (end > from) {
+      long start = Math.max(from, end - buffer.capacity());
+      buffer.clear();
+      buffer.limit((int) (end - start));
+      read(channel, buffer, start);
+      for (int i = buffer.position() - 1; i >= 0; i--) {
+        if (buffer.get(i) == '\n') {
+          return start + i + 1;
+        }
+      }
+      end = start;
+    }
+    return from;
+  }
+
+  private static long checksum(FileChannel channel, long offset) throws IOException {
+    long start = Math.max(0, offset - CHECKSUM_WINDOW);
+    ByteBuffer buffer = ByteBuffer.allocate((int) (offset - start));
+    read(channel, buffer, start);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, buffer.position());
+    return crc.getValue() ^ ((long) buffer.position() << 32);
+  }
+
+  private static void read(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break;
+      }
+    }
+  }
+
+  static long fingerprint(Path file) throws IOException {
+    return Files.size(file) * 31 + Files.getLastModifiedTime(file).toMillis();
+  }
+
+  /**
+   * Tells apart the directories loaded from the same file with different shop settings.
+   */
+  static long fingerprint(CustomerDirectory customers) {
+    long fingerprint = customers.size();
+    for (String shopId : customers.getShopIds()) {
+      fingerprint = fingerprint * 31 + shopId.hashCode();
+    }
+    return fingerprint;
+  }
+
+  private static State load(String stateFile, CustomerDirectory customers) {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(Paths.get(stateFile))))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != FixedPoint.SCALE) {
+        log.info("Ignoring the incompatible aggregate state in {}", stateFile);
+        return null;
+      }
+      State state = new State();
+      state.customersFingerprint = in.readLong();
+      state.offset = in.readLong();
+      state.checksum = in.readLong();
+      state.aggregator = new PaymentAggregator(customers);
+      int customerCount = in.readInt();
+      for (int i = 0; i < customerCount; i++) {
+        int index = customers.indexOf(in.readUTF(), in.readUTF());
+        long units = in.readLong();
+        int scale = in.readInt();
+        if (index < 0) {
+          log.info("The aggregate state in {} refers to unknown customers", stateFile);
+          return null;
+        }
+        state.aggregator.getCustomerTotals().add(index, units, scale);
+      }
+      if (!readShopTotals(in, customers, state.aggregator.getShopTotals(PaymentType.CARD)) ||
+          !readShopTotals(in, customers, state.aggregator.getShopTotals(PaymentType.TRANSFER))) {
+        log.info("The aggregate state in {} refers to unknown shops", stateFile);
+        return null;
+      }
+      return state;
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      log.error("Error reading the aggregate state {}: {}", stateFile, e.getMessage());
+      return null;
+    }
+  }
+
+  private static boolean readShopTotals(DataInputStream in, CustomerDirectory customers,
+      AmountTotals totals) throws IOException {
+    int count = in.readInt();
+    boolean known = true;
+    for (int i = 0; i < count; i++) {
+      int index = customers.shopIndexOf(in.readUTF());
+      long units = in.readLong();
+      int scale = in.readInt();
+      if (index < 0) {
+        known = false;
+      } else {
+        totals.add(index, units, scale);
+      }
+    }
+    return known;
+  }
+
+  private static void save(String stateFile, PaymentAggregator aggregator,
+      long customersFingerprint, long offset, long checksum) throws IOException {
+    CustomerDirectory customers = aggregator.getCustomers();
+    Path target = Paths.get(stateFile);
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(FixedPoint.SCALE);
+      out.writeLong(customersFingerprint);
+      out.writeLong(offset);
+      out.writeLong(checksum);
+      AmountTotals customerTotals = aggregator.getCustomerTotals();
+      out.writeInt(countNonZero(customerTotals, customers.size()));
+      for (int i = 0; i < customers.size(); i++) {
+        if (isNonZero(customerTotals, i)) {
+          out.writeUTF(customers.getCustomerShopId(i));
+          out.writeUTF(customers.getCustomerId(i));
+          writeTotal(out, customerTotals, i);
+        }
+      }
+      writeShopTotals(out, customers, aggregator.getShopTotals(PaymentType.CARD));
+      writeShopTotals(out, customers, aggregator.getShopTotals(PaymentType.TRANSFER));
+    }
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeShopTotals(DataOutputStream out, CustomerDirectory customers,
+      AmountTotals totals) throws IOException {
+    out.writeInt(countNonZero(totals, customers.getShopCount()));
+    for (int i = 0; i < customers.getShopCount(); i++) {
+      if (isNonZero(totals, i)) {
+        out.writeUTF(customers.getShopId(i));
+        writeTotal(out, totals, i);
+      }
+    }
+  }
+
+  private static int countNonZero(AmountTotals totals, int size) {
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (isNonZero(totals, i)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static boolean isNonZero(AmountTotals totals, int index) {
+    return totals.getUnits(index) != 0 || totals.getScale(index) != 0;
+  }
+
+  private static void writeTotal(DataOutputStream out, AmountTotals totals, int index)
+      throws IOException {
+    out.writeLong(totals.getUnits(index));
+    out.writeInt(totals.getScale(index));
+  }
+
+  private static class State {
+    private long customersFingerprint;
+    private long offset;
+    private long checksum;
+    private PaymentAggregator aggregator;
+  }
+}
@@ -0,0 +1,69 @@
+package otp.util;
+
+/**
+ * Reusable single pass field scanner for delimited lines held in a {@link String}.
+ */
+public class LineTokenizer extends FieldTokenizer {
+  private final char separator;
+  private String line;
+
+  public LineTokenizer(char separator) {
+    this.separator = separator;
+  }
+
+  public LineTokenizer reset(String line) {
+    this.line = line;
+    fieldCount = 0;
+    int start = 0;
+    int length = line.length();
+    for (int i = 0; i < length; i++) {
+      if (line.charAt(i) == separator) {
+        addField(start, i);
+        start = i + 1;
+      }
+    }
+    addField(start, length);
+    dropTrailingEmptyFields(length == 0);
+    return this;
+  }
+
+  @Override
+  public String line() {
+    return line;
+  }
+
+  @Override
+  public String field(int index) {
+    return line.substring(starts[index], ends[index]);
+  }
+
+  @Override
+  public boolean isBlank(int index) {
+    for (int i = starts[index]; i < ends[index]; i++) {
+      if (!Character.isWhitespace(line.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public char charAt(int index, int offset) {
+    return line.charAt(starts[index] + offset);
+  }
+
+  @Override
+  public boolean fieldEquals(int index, String value) {
+    return ends[index] - starts[index] == value.length() &&
+        line.regionMatches(starts[index], value, 0, value.length());
+  }
+
+  @Override
+  public int hash(int index) {
+    int hash = 0;
+    for (int i = starts[index]; i < ends[index]; i++) {
+      hash = 31 * hash + line.charAt(i);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,87 @@
+package otp.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Memory maps a file, or a byte range of it, and hands every line to the consumer as a
+ * {@link ByteLineTokenizer} without decoding the whole content. Lines are terminated by
+ * {@code \n} or {@code \r\n}, the last line may be unterminated.
+ */
+public class MappedCsvReader {
+  private static final long MAX_WINDOW = 1L << 30;
+
+  private MappedCsvReader() {
+    throw new UnsupportedOperationException("This is a util class!");
+  }
+
+  public static void read(String fileName, char separator, Consumer<FieldTokenizer> consumer)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      read(channel, 0, channel.size(), separator, consumer);
+    }
+  }
+
+  public static void read(FileChannel channel, long start, long end, char separator,
+      Consumer<FieldTokenizer> consumer) throws IOException {
+    ByteLineTokenizer fields = new ByteLineTokenizer(separator);
+    long position = start;
+    while (position < end) {
+      long windowEnd = Math.min(end, position + MAX_WINDOW);
+      MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, position, windowEnd - position);
+      int limit = buffer.limit();
+      int consumed = limit;
+      if (windowEnd < end) {
+        consumed = 0;
+        for (int i = limit - 1; i >= 0; i--) {
+          if (buffer.get(i) == '\n') {
+            consumed = i + 1;
+            break;
+          }
+        }
+        if (consumed == 0) {
+          throw new IOException("Line longer than " + MAX_WINDOW + " bytes at offset " + position);
+        }
+      }
+      readLines(fields, buffer, 0, consumed, consumer);
+      position += consumed;
+    }
+  }
+
+  /**
+   * Hands the lines of the {@code [start, end)} bytes of a buffer to the consumer, the last line
+   * may be unterminated.
+   */
+  public static void read(ByteBuffer buffer, int start, int end, char separator,
+      Consumer<FieldTokenizer> consumer) {
+    readLines(new ByteLineTokenizer(separator), buffer, start, end, consumer);
+  }
+
+  private static void readLines(ByteLineTokenizer fields, ByteBuffer buffer, int start, int end,
+      Consumer<FieldTokenizer> consumer) {
+    int lineStart = start;
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) == '\n') {
+        accept(fields, buffer, lineStart, i, consumer);
+        lineStart = i + 1;
+      }
+    }
+    if (lineStart < end) {
+      accept(fields, buffer, lineStart, end, consumer);
+    }
+  }
+
+  private static void accept(ByteLineTokenizer fields, ByteBuffer buffer, int lineStart,
+      int lineEnd, Consumer<FieldTokenizer> consumer) {
+    if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+      lineEnd--;
+    }
+    consumer.accept(fields.reset(buffer, lineStart, lineEnd));
+  }
+}
@@ -0,0 +1,224 @@
+package otp.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the counters, timers and gauges of a run, dumped as JSON at the end of the run and
+ * optionally published as JMX MBeans under {@code otp:type=<kind>,name=<name>}. Counters and
+ * timers are {@link LongAdder}s, so threads updating them don't contend; the hot paths count into
+ * locals and add once per file or chunk. Instrumentation is switched off entirely with
+ * {@code -Dotp.metrics=false}.
+ */
+public class Metrics {
+  public static final boolean ENABLED =
+      Boolean.parseBoolean(System.getProperty("otp.metrics", "true"));
+  private static final Logger log = LogManager.getLogger(Metrics.class);
+  private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+  private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+  private static final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+  private static volatile MBeanServer mBeanServer;
+
+  private Metrics() {
+    throw new UnsupportedOperationException("This is a util class!");
+  }
+
+  public static Counter counter(String name) {
+    return counters.computeIfAbsent(name, key -> register("Counter", key, new Counter()));
+  }
+
+  public static Timer timer(String name) {
+    return timers.computeIfAbsent(name, key -> register("Timer", key, new Timer()));
+  }
+
+  public static void gauge(String name, LongSupplier supplier) {
+    gauges.computeIfAbsent(name, key -> register("Gauge", key, new Gauge(supplier)));
+  }
+
+  public static synchronized void enableJmx() {
+    if (Objects.nonNull(mBeanServer)) {
+      return;
+    }
+    mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    counters.forEach((name, counter) -> register("Counter", name, counter));
+    timers.forEach((name, timer) -> register("Timer", name, timer));
+    gauges.forEach((name, gauge) -> register("Gauge", name, gauge));
+  }
+
+  private static <T> T register(String type, String name, T metric) {
+    MBeanServer server = mBeanServer;
+    if (Objects.nonNull(server)) {
+      try {
+        ObjectName objectName =
+            new ObjectName("otp:type=" + type + ",name=" + ObjectName.quote(name));
+        if (!server.isRegistered(objectName)) {
+          server.registerMBean(metric, objectName);
+        }
+      } catch (JMException e) {
+        log.error("Error registering the {} MBean: {}", name, e.getMessage());
+      }
+    }
+    return metric;
+  }
+
+  public static String toJson() {
+    StringBuilder json = new StringBuilder("{\n  \"counters\": {");
+    String separator = "\n";
+    for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+      json.append(separator).append("    ").append(quote(entry.getKey())).append(": ")
+          .append(entry.getValue().getCount());
+      separator = ",\n";
+    }
+    json.append(counters.isEmpty() ? "" : "\n  ").append("},\n  \"gauges\": {");
+    separator = "\n";
+    for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      json.append(separator).append("    ").append(quote(entry.getKey())).append(": ")
+          .append(entry.getValue().getValue());
+      separator = ",\n";
+    }
+    json.append(gauges.isEmpty() ? "" : "\n  ").append("},\n  \"timers\": {");
+    separator = "\n";
+    for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+      json.append(separator).append("    ").append(quote(entry.getKey()))
+          .append(": {\"count\": ").append(entry.getValue().getCount())
+          .append(", \"totalMillis\": ").append(entry.getValue().getTotalNanos() / 1_000_000)
+          .append(", \"meanMicros\": ").append(entry.getValue().getMeanNanos() / 1_000)
+          .append('}');
+      separator = ",\n";
+    }
+    return json.append(timers.isEmpty() ? "" : "\n  ").append("}\n}\n").toString();
+  }
+
+  private static String quote(String value) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  /**
+   * Writes the JSON dump to the given file, or logs it if there's no file.
+   */
+  public static void dump(String fileName) {
+    if (!ENABLED) {
+      return;
+    }
+    String json = toJson();
+    if (Objects.isNull(fileName)) {
+      log.info("Metrics of the run:\n{}", json);
+      return;
+    }
+    List<String> lines = Collections.singletonList(json.substring(0, json.length() - 1));
+    ReportUtil.writeReport(lines, fileName, "the metrics of the run");
+  }
+
+  public interface CounterMBean {
+    long getCount();
+  }
+
+  public interface TimerMBean {
+    long getCount();
+
+    long getTotalNanos();
+
+    long getMeanNanos();
+  }
+
+  public interface GaugeMBean {
+    long getValue();
+  }
+
+  public static class Counter implements CounterMBean {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+      if (ENABLED) {
+        count.increment();
+      }
+    }
+
+    public void add(long value) {
+      if (ENABLED) {
+        count.add(value);
+      }
+    }
+
+    @Override
+    public long getCount() {
+      return count.sum();
+    }
+  }
+
+  /**
+   * Sums the time of the events it records. {@link #start()} and {@link #stop(long)} bracket an
+   * event; a sampled measurement is recorded with the number of events it stands for.
+   */
+  public static class Timer implements TimerMBean {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    public long start() {
+      return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public void stop(long start) {
+      if (ENABLED) {
+        record(System.nanoTime() - start, 1);
+      }
+    }
+
+    public void record(long elapsedNanos, long events) {
+      if (ENABLED) {
+        count.add(events);
+        nanos.add(elapsedNanos * events);
+      }
+    }
+
+    @Override
+    public long getCount() {
+      return count.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+      return nanos.sum();
+    }
+
+    @Override
+    public long getMeanNanos() {
+      long events = count.sum();
+      return events == 0 ? 0 : nanos.sum() / events;
+    }
+  }
+
+  public static class Gauge implements GaugeMBean {
+    private final LongSupplier supplier;
+
+    private Gauge(LongSupplier supplier) {
+      this.supplier = supplier;
+    }
+
+    @Override
+    public long getValue() {
+      return supplier.getAsLong();
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package otp.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the payment files of a directory or a glob, e.g. the hourly files of every shop, on a
+ * bounded pool of workers. Every file is read into its own {@link PaymentSink} partial, gzip
+ * compressed ones by a {@link StagedPaymentReader} so that inflating overlaps parsing, and the
+ * partials are merged in file name order. A file that can't be read is logged and left out as a
+ * whole, the other files are still read; the lines it rejected before failing stay reported.
+ * A directory that can't be listed, a glob matching no file and an interrupted read are thrown as
+ * an {@link UncheckedIOException} instead, since the totals would be missing every payment.
+ */
+public class MultiFilePaymentReader {
+  public static final String GZIP_SUFFIX = ".gz";
+  private static final String DIRECTORY_GLOB = "*.{csv,csv.gz}";
+  private static final int GZIP_BUFFER = 1 << 16;
+  private static final Logger log = LogManager.getLogger(MultiFilePaymentReader.class);
+  private static final AtomicInteger threadCount = new AtomicInteger();
+  private static final Metrics.Timer fileTimer = Metrics.timer("files.read");
+  private static final Metrics.Counter failedCount = Metrics.counter("files.failed");
+
+  private final int workers;
+  private final List<Path> failedFiles = new ArrayList<>();
+
+  public MultiFilePaymentReader(int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("The number of workers must be positive: " + workers);
+    }
+    this.workers = workers;
+  }
+
+  /**
+   * Whether the payments file setting is a directory, a glob or a compressed file, which only
+   * this reader reads.
+   */
+  public static boolean isMultiFile(String fileName) {
+    return isGlob(fileName) || fileName.endsWith(GZIP_SUFFIX) ||
+        Files.isDirectory(Paths.get(fileName));
+  }
+
+  private static boolean isGlob(String fileName) {
+    return fileName.indexOf('*') >= 0 || fileName.indexOf('?') >= 0 ||
+        fileName.indexOf('[') >= 0 || fileName.indexOf('{') >= 0;
+  }
+
+  /**
+   * The {@code .csv} and {@code .csv.gz} files of a directory, or the files matching a glob
+   * whose wildcards are all in the file name, sorted by name. Any other name is a single file.
+   */
+  public static List<Path> resolve(String fileName) throws IOException {
+    Path directory;
+    String glob;
+    if (isGlob(fileName)) {
+      int slash = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+      directory = Paths.get(slash < 0 ? "." : fileName.substring(0, slash + 1));
+      glob = fileName.substring(slash + 1);
+    } else if (Files.isDirectory(Paths.get(fileName))) {
+      directory = Paths.get(fileName);
+      glob = DIRECTORY_GLOB;
+    } else {
+      return Collections.singletonList(Paths.get(fileName));
+    }
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+      for (Path file : stream) {
+        if (Files.isRegularFile(file)) {
+          files.add(file);
+        }
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  public <T extends PaymentSink<T>> T readPayments(String fileName, CustomerDirectory customers,
+      T sink) {
+    List<Path> files;
+    try {
+      files = resolve(fileName);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error reading directory " + fileName, e);
+    }
+    if (files.isEmpty()) {
+      throw new UncheckedIOException("Error reading file " + fileName,
+          new NoSuchFileException(fileName, null, "There are no matching payment files"));
+    }
+    return readPayments(files, customers, sink);
+  }
+
+  public <T extends PaymentSink<T>> T readPayments(List<Path> files, CustomerDirectory customers,
+      T sink) {
+    failedFiles.clear();
+    ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+      Thread thread = new Thread(runnable, "files-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      // Only a few files are read ahead of the one being merged, to bound the partials held
+      Deque<Future<T>> tasks = new ArrayDeque<>();
+      int next = 0;
+      int merged = 0;
+      while (merged < files.size()) {
+        while (next < files.size() && tasks.size() < 2 * workers) {
+          Path file = files.get(next++);
+          T partial = sink.newPartial();
+          tasks.add(executor.submit(() -> readFile(file, customers, partial)));
+        }
+        Path file = files.get(merged++);
+        try {
+          sink.merge(tasks.remove().get());
+          log.info("Read payments file {} ({} of {})", file, merged, files.size());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+          }
+          failedFiles.add(file);
+          failedCount.increment();
+          log.error("Error reading file {}: {}", file, e.getCause().getMessage());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(
+          new InterruptedIOException("Interrupted while reading the payment files"));
+    } finally {
+      executor.shutdownNow();
+    }
+    return sink;
+  }
+
+  private static <T extends PaymentSink<T>> T readFile(Path file, CustomerDirectory customers,
+      T partial) throws IOException {
+    long start = fileTimer.start();
+    if (file.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+      try (ReadableByteChannel channel = Channels.newChannel(
+          new GZIPInputStream(Files.newInputStream(file), GZIP_BUFFER))) {
+        new StagedPaymentReader(1).readPayments(channel, customers, partial);
+      }
+    } else {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        CSVReaderUtil.readPayments(channel, 0, channel.size(), customers, partial);
+      }
+    }
+    fileTimer.stop(start);
+    return partial;
+  }
+
+  /**
+   * The files the last read left out because they couldn't be read.
+   */
+  public List<Path> getFailedFiles() {
+    return Collections.unmodifiableList(new ArrayList<>(failedFiles));
+  }
+}
@@ -0,0 +1,270 @@
+package otp.util;
+
+import otp.model.Payment;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+
+/**
+ * A {@link CustomerDirectory} kept outside of the heap, so that its heap use doesn't grow with
+ * the number of customers; only the shop identifiers stay on the heap. The customer records
+ * (shop index, customer id, name and address) are appended to an arena of direct buffers, their
+ * offsets to another direct buffer indexed by the customer index, and the (shopId, customerId)
+ * keys lead to them through an open addressing hash table in a third one. Names and addresses
+ * are decoded on demand. Once loaded, the directory can be read from several threads.
+ */
+public class OffHeapCustomerDirectory implements CustomerDirectory {
+  private static final int FIRST_CHUNK_SIZE = 1 << 16;
+  private static final int MAX_CHUNK_SIZE = 1 << 28;
+  private static final int SLOT_SIZE = 8;
+  private static final int MAX_SLOTS = 1 << 27;
+
+  private final ShopTable shops = new ShopTable();
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private ByteBuffer offsets = ByteBuffer.allocateDirect(FIRST_CHUNK_SIZE);
+  private ByteBuffer table = ByteBuffer.allocateDirect(16 * SLOT_SIZE);
+  private int mask = 15;
+  private int size;
+
+  public OffHeapCustomerDirectory() {
+    chunks.add(ByteBuffer.allocateDirect(FIRST_CHUNK_SIZE));
+  }
+
+  @Override
+  public boolean add(String shopId, String customerId, String name, String address) {
+    int shopIndex = shops.add(shopId);
+    int hash = hash(shopIndex, customerId.hashCode());
+    int slot = find(hash, shopIndex, customerId);
+    if (table.getInt(slot * SLOT_SIZE + 4) != 0) {
+      return false;
+    }
+    if (size == MAX_SLOTS / 2) {
+      throw new IllegalStateException("The customer directory is full: " + size + " customers");
+    }
+
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    byte[] addressBytes = address.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer chunk = chunkFor(12 + customerId.length() * 2 + nameBytes.length +
+        4 + addressBytes.length);
+    long offset = (long) (chunks.size() - 1) << 32 | chunk.position();
+    chunk.putInt(shopIndex).putInt(customerId.length());
+    for (int i = 0; i < customerId.length(); i++) {
+      chunk.putChar(customerId.charAt(i));
+    }
+    chunk.putInt(nameBytes.length).put(nameBytes).putInt(addressBytes.length).put(addressBytes);
+
+    if ((size + 1) * 8 > offsets.capacity()) {
+      ByteBuffer grown = ByteBuffer.allocateDirect(offsets.capacity() * 2);
+      ByteBuffer old = offsets.duplicate();
+      old.clear();
+      grown.put(old);
+      offsets = grown;
+    }
+    offsets.putLong(size * 8, offset);
+    table.putInt(slot * SLOT_SIZE, hash);
+    table.putInt(slot * SLOT_SIZE + 4, size + 1);
+    size++;
+    if (size * 2 > mask + 1) {
+      rehash();
+    }
+    return true;
+  }
+
+  private ByteBuffer chunkFor(int recordSize) {
+    ByteBuffer chunk = chunks.get(chunks.size() - 1);
+    if (chunk.remaining() < recordSize) {
+      chunk = ByteBuffer.allocateDirect(
+          Math.max(recordSize, Math.min(MAX_CHUNK_SIZE, chunk.capacity() * 2)));
+      chunks.add(chunk);
+    }
+    return chunk;
+  }
+
+  private static int hash(int shopIndex, int customerIdHash) {
+    return ShopTable.mix(customerIdHash * 31 + shopIndex);
+  }
+
+  private int find(int hash, int shopIndex, String customerId) {
+    int slot = hash & mask;
+    while (true) {
+      int ref = table.getInt(slot * SLOT_SIZE + 4);
+      if (ref == 0 || table.getInt(slot * SLOT_SIZE) == hash &&
+          matches(ref - 1, shopIndex, customerId)) {
+        return slot;
+      }
+      slot = slot + 1 & mask;
+    }
+  }
+
+  private boolean matches(int index, int shopIndex, String customerId) {
+    ByteBuffer chunk = chunk(index);
+    int position = position(index);
+    if (chunk.getInt(position) != shopIndex || chunk.getInt(position + 4) != customerId.length()) {
+      return false;
+    }
+    for (int i = 0; i < customerId.length(); i++) {
+      if (chunk.getChar(position + 8 + i * 2) != customerId.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matches(int index, int shopIndex, FieldTokenizer fields, int field) {
+    ByteBuffer chunk = chunk(index);
+    int position = position(index);
+    int length = chunk.getInt(position + 4);
+    if (chunk.getInt(position) != shopIndex || fields.length(field) < length) {
+      return false;
+    }
+    for (int i = 0; i < fields.length(field); i++) {
+      char c = fields.charAt(field, i);
+      if (c == FieldTokenizer.NON_ASCII) {
+        return matches(index, shopIndex, fields.field(field));
+      }
+      if (i == length || chunk.getChar(position + 8 + i * 2) != c) {
+        return false;
+      }
+    }
+    return fields.length(field) == length;
+  }
+
+  private void rehash() {
+    int slots = (mask + 1) * 2;
+    ByteBuffer grown = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+    int grownMask = slots - 1;
+    for (int slot = 0; slot <= mask; slot++) {
+      int ref = table.getInt(slot * SLOT_SIZE + 4);
+      if (ref != 0) {
+        int hash = table.getInt(slot * SLOT_SIZE);
+        int target = hash & grownMask;
+        while (grown.getInt(target * SLOT_SIZE + 4) != 0) {
+          target = target + 1 & grownMask;
+        }
+        grown.putInt(target * SLOT_SIZE, hash);
+        grown.putInt(target * SLOT_SIZE + 4, ref);
+      }
+    }
+    table = grown;
+    mask = grownMask;
+  }
+
+  private ByteBuffer chunk(int index) {
+    return chunks.get((int) (offsets.getLong(index * 8) >>> 32));
+  }
+
+  private int position(int index) {
+    return (int) offsets.getLong(index * 8);
+  }
+
+  private static String readString(ByteBuffer chunk, int position) {
+    byte[] bytes = new byte[chunk.getInt(position)];
+    ByteBuffer view = chunk.duplicate();
+    view.position(position + 4);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private int namePosition(ByteBuffer chunk, int index) {
+    int position = position(index);
+    return position + 8 + chunk.getInt(position + 4) * 2;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int indexOf(String shopId, String customerId) {
+    int shopIndex = shops.indexOf(shopId);
+    if (shopIndex < 0 || Objects.isNull(customerId)) {
+      return -1;
+    }
+    int slot = find(hash(shopIndex, customerId.hashCode()), shopIndex, customerId);
+    return table.getInt(slot * SLOT_SIZE + 4) - 1;
+  }
+
+  @Override
+  public int indexOf(FieldTokenizer fields, int shopField, int customerField) {
+    int shopIndex = shops.indexOf(fields, shopField);
+    if (shopIndex < 0) {
+      return -1;
+    }
+    int hash = hash(shopIndex, fields.hash(customerField));
+    int slot = hash & mask;
+    while (true) {
+      int ref = table.getInt(slot * SLOT_SIZE + 4);
+      if (ref == 0 || table.getInt(slot * SLOT_SIZE) == hash &&
+          matches(ref - 1, shopIndex, fields, customerField)) {
+        return ref - 1;
+      }
+      slot = slot + 1 & mask;
+    }
+  }
+
+  @Override
+  public int indexOf(Payment payment) {
+    if (payment.getCustomers() == this) {
+      return payment.getCustomerIndex();
+    }
+    return indexOf(payment.getShopId(), payment.getCustomerId());
+  }
+
+  @Override
+  public int shopIndexOf(String shopId) {
+    return shops.indexOf(shopId);
+  }
+
+  @Override
+  public int getShopIndex(int customerIndex) {
+    return chunk(customerIndex).getInt(position(customerIndex));
+  }
+
+  @Override
+  public String getShopId(int shopIndex) {
+    return shops.get(shopIndex);
+  }
+
+  @Override
+  public int getShopCount() {
+    return shops.size();
+  }
+
+  @Override
+  public SortedSet<String> getShopIds() {
+    return shops.sorted();
+  }
+
+  @Override
+  public String getCustomerShopId(int index) {
+    return shops.get(getShopIndex(index));
+  }
+
+  @Override
+  public String getCustomerId(int index) {
+    ByteBuffer chunk = chunk(index);
+    int position = position(index);
+    char[] chars = new char[chunk.getInt(position + 4)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = chunk.getChar(position + 8 + i * 2);
+    }
+    return new String(chars);
+  }
+
+  @Override
+  public String getName(int index) {
+    ByteBuffer chunk = chunk(index);
+    return readString(chunk, namePosition(chunk, index));
+  }
+
+  @Override
+  public String getAddress(int index) {
+    ByteBuffer chunk = chunk(index);
+    int position = namePosition(chunk, index);
+    return readString(chunk, position + 4 + chunk.getInt(position));
+  }
+}
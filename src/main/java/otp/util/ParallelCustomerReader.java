@@ -0,0 +1,169 @@
+package otp.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads a customers file in newline aligned byte ranges on a {@link ForkJoinPool}. The lines of
+ * the ranges are tokenized and validated in parallel, then the calling thread adds the customers
+ * range by range, in file order, so the customers and the duplicates are the same as the ones of
+ * the sequential {@link CSVReaderUtil#readCustomers} path. Like in {@link ParallelPaymentReader},
+ * invalid lines are reported by the thread that finds them: the rejection counts match the
+ * sequential path, the order of the logged and written rejections doesn't. Only a few ranges are
+ * validated ahead of the one being added, so the parsed lines of the whole file are never held at
+ * once. The valid lines only keep their fields, the few duplicates are read again from the file
+ * to be reported.
+ */
+public class ParallelCustomerReader {
+  private static final long MIN_CHUNK_SIZE = 1 << 20;
+  private static final Metrics.Timer customersTimer = Metrics.timer("phase.customers");
+  private static final Metrics.Counter customerLines = Metrics.counter("customers.lines");
+  private static final Metrics.Counter customersAccepted = Metrics.counter("customers.accepted");
+
+  private final int parallelism;
+  private final long minChunkSize;
+
+  public ParallelCustomerReader(int parallelism) {
+    this(parallelism, MIN_CHUNK_SIZE);
+  }
+
+  public ParallelCustomerReader(int parallelism, long minChunkSize) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+    }
+    if (minChunkSize < 1) {
+      throw new IllegalArgumentException("The chunk size must be positive: " + minChunkSize);
+    }
+    this.parallelism = parallelism;
+    this.minChunkSize = minChunkSize;
+  }
+
+  /**
+   * Adds the valid customers of the allowed shops to the directory. A read error is thrown as an
+   * {@link UncheckedIOException}, the directory then holds an unspecified part of the customers.
+   */
+  public <T extends CustomerDirectory> T readCustomers(String fileName, T customers,
+      Set<String> shops) {
+    long start = customersTimer.start();
+    int size = customers.size();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      long[] boundaries = ParallelPaymentReader.split(channel, 0, channel.size(),
+          Math.max(minChunkSize, channel.size() / (parallelism * 4L) + 1));
+      Deque<ForkJoinTask<CustomerRange>> tasks = new ArrayDeque<>();
+      int next = 0;
+      while (next < boundaries.length - 1 || !tasks.isEmpty()) {
+        while (next < boundaries.length - 1 && tasks.size() < 2 * parallelism) {
+          long rangeStart = boundaries[next];
+          long rangeEnd = boundaries[++next];
+          tasks.add(pool.submit(() -> validateRange(channel, rangeStart, rangeEnd, shops)));
+        }
+        addCustomers(channel, tasks.remove().join(), customers);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error reading file " + fileName, e);
+    } catch (UncheckedIOException e) {
+      throw new UncheckedIOException("Error reading file " + fileName, e.getCause());
+    } finally {
+      pool.shutdownNow();
+      customersAccepted.add(customers.size() - size);
+      customersTimer.stop(start);
+    }
+    return customers;
+  }
+
+  private static CustomerRange validateRange(FileChannel channel, long start, long end,
+      Set<String> shops) {
+    List<CustomerLine> lines = new ArrayList<>();
+    RejectionReporter rejections = CSVReaderUtil.getRejections();
+    long[] count = new long[1];
+    try {
+      MappedCsvReader.read(channel, start, end, CSVReaderUtil.SEPARATOR, fields -> {
+        int number = (int) count[0]++;
+        RejectionReason reason = CSVReaderUtil.customerRejection(fields, shops);
+        if (Objects.nonNull(reason)) {
+          rejections.reject(reason, fields);
+        } else {
+          lines.add(new CustomerLine(number, fields.field(0), fields.field(1), fields.field(2),
+              fields.field(3)));
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      customerLines.add(count[0]);
+    }
+    return new CustomerRange(start, end, lines);
+  }
+
+  /**
+   * Adds the customers of a range, then reads the range again to report its duplicates, if it has
+   * any, in file order.
+   */
+  private static void addCustomers(FileChannel channel, CustomerRange range,
+      CustomerDirectory customers) throws IOException {
+    BitSet duplicates = new BitSet();
+    for (CustomerLine line : range.lines) {
+      if (!customers.add(line.shopId, line.customerId, line.name, line.address)) {
+        duplicates.set(line.number);
+      }
+    }
+    if (duplicates.isEmpty()) {
+      return;
+    }
+    RejectionReporter rejections = CSVReaderUtil.getRejections();
+    int[] number = new int[1];
+    MappedCsvReader.read(channel, range.start, range.end, CSVReaderUtil.SEPARATOR, fields -> {
+      if (duplicates.get(number[0]++)) {
+        rejections.reject(RejectionReason.CUSTOMER_DUPLICATE, fields);
+      }
+    });
+  }
+
+  /**
+   * The valid customer lines of a byte range of the file.
+   */
+  private static class CustomerRange {
+    private final long start;
+    private final long end;
+    private final List<CustomerLine> lines;
+
+    private CustomerRange(long start, long end, List<CustomerLine> lines) {
+      this.start = start;
+      this.end = end;
+      this.lines = lines;
+    }
+  }
+
+  /**
+   * The fields of a valid customer line and its number within the range.
+   */
+  private static class CustomerLine {
+    private final int number;
+    private final String shopId;
+    private final String customerId;
+    private final String name;
+    private final String address;
+
+    private CustomerLine(int number, String shopId, String customerId, String name,
+        String address) {
+      this.number = number;
+      this.shopId = shopId;
+      this.customerId = customerId;
+      this.name = name;
+      this.address = address;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package otp.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads a payments file in newline aligned byte ranges on a {@link ForkJoinPool}. Every range is
+ * read into its own {@link PaymentSink} partial and the partial results are merged in file
+ * order, so the sums are the same as the ones of the sequential {@link CSVReaderUtil#readPayments}
+ * path. Invalid lines are reported by the thread that finds them: the rejection counts match the
+ * sequential path, the order of the logged and written rejections doesn't.
+ */
+public class ParallelPaymentReader {
+  public static final int DEFAULT_PARALLELISM =
+      Integer.getInteger("otp.threads", Runtime.getRuntime().availableProcessors());
+  private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+  private final int parallelism;
+  private final long minChunkSize;
+
+  public ParallelPaymentReader() {
+    this(DEFAULT_PARALLELISM);
+  }
+
+  public ParallelPaymentReader(int parallelism) {
+    this(parallelism, MIN_CHUNK_SIZE);
+  }
+
+  public ParallelPaymentReader(int parallelism, long minChunkSize) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+    }
+    if (minChunkSize < 1) {
+      throw new IllegalArgumentException("The chunk size must be positive: " + minChunkSize);
+    }
+    this.parallelism = parallelism;
+    this.minChunkSize = minChunkSize;
+  }
+
+  public PaymentAggregator readPayments(CustomerDirectory customers) {
+    return readPayments(CSVReaderUtil.PAYMENTS_FILE, customers);
+  }
+
+  public PaymentAggregator readPayments(String fileName, CustomerDirectory customers) {
+    return readPayments(fileName, 0, Long.MAX_VALUE, customers);
+  }
+
+  public PaymentAggregator readPayments(String fileName, long start, long end,
+      CustomerDirectory customers) {
+    return readPayments(fileName, start, end, customers, new PaymentAggregator(customers));
+  }
+
+  public <T extends PaymentSink<T>> T readPayments(String fileName, CustomerDirectory customers,
+      T sink) {
+    return readPayments(fileName, 0, Long.MAX_VALUE, customers, sink);
+  }
+
+  /**
+   * Reads the range into the sink. Only a few ranges are read ahead of the one being merged, so
+   * the partials of the whole file are never held at once. A read error is thrown as an
+   * {@link UncheckedIOException}, the sink then holds an unspecified part of the payments.
+   */
+  public <T extends PaymentSink<T>> T readPayments(String fileName, long start, long end,
+      CustomerDirectory customers, T sink) {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      long[] boundaries = split(channel, start, Math.min(end, channel.size()));
+      Deque<ForkJoinTask<T>> tasks = new ArrayDeque<>();
+      int next = 0;
+      while (next < boundaries.length - 1 || !tasks.isEmpty()) {
+        while (next < boundaries.length - 1 && tasks.size() < 2 * parallelism) {
+          long rangeStart = boundaries[next];
+          long rangeEnd = boundaries[++next];
+          T partial = sink.newPartial();
+          tasks.add(pool.submit(() -> readRange(channel, rangeStart, rangeEnd, customers,
+              partial)));
+        }
+        sink.merge(tasks.remove().join());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error reading file " + fileName, e);
+    } catch (UncheckedIOException e) {
+      throw new UncheckedIOException("Error reading file " + fileName, e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return sink;
+  }
+
+  private long[] split(FileChannel channel, long start, long end) throws IOException {
+    return split(channel, start, end,
+        Math.max(minChunkSize, (end - start) / (parallelism * 4L) + 1));
+  }
+
+  /**
+   * Splits {@code [start, end)} into ranges of about {@code chunkSize} bytes that start at the
+   * beginning of a line, returning the boundaries of the ranges.
+   */
+  static long[] split(FileChannel channel, long start, long end, long chunkSize)
+      throws IOException {
+    List<Long> boundaries = new ArrayList<>();
+    boundaries.add(start);
+    long position = start;
+    while (position < end) {
+      position = Math.min(end, nextLineStart(channel, Math.min(position + chunkSize, end)));
+      boundaries.add(position);
+    }
+    long[] result = new long[boundaries.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = boundaries.get(i);
+    }
+    return result;
+  }
+
+  private static long nextLineStart(FileChannel channel, long position) throws IOException {
+    long size = channel.size();
+    if (position >= size) {
+      return size;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long offset = position - 1;
+    while (offset < size) {
+      buffer.clear();
+      int read = channel.read(buffer, offset);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return offset + i + 1;
+        }
+      }
+      offset += read;
+    }
+    return size;
+  }
+
+  private static <T extends PaymentSink<T>> T readRange(FileChannel channel, long start,
+      long end, CustomerDirectory customers, T partial) {
+    try {
+      CSVReaderUtil.readPayments(channel, start, end, customers, partial);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return partial;
+  }
+}
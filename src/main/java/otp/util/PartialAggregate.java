@@ -0,0 +1,281 @@
+package otp.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The customer and shop totals, with the number of payments behind them, of one worker of a
+ * sharded run. Every worker aggregates its share of the payments, either its own input files or
+ * the payments of one shard of a common input, and {@link #write(String) writes} them to a
+ * partial file; {@link #read(String)} adds such files back up for the final reports. The files
+ * refer to customers and shops by their identifiers, so the workers don't need the same customer
+ * file as the merge.
+ */
+public class PartialAggregate implements PaymentSink<PartialAggregate> {
+  public static final String PARTIAL_FILE = "src/reports/payments.partial";
+  private static final Logger log = LogManager.getLogger(PartialAggregate.class);
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+  private static final int MAGIC = 0x4f545050;
+  private static final int VERSION = 1;
+
+  private final CustomerDirectory customers;
+  private final int shard;
+  private final int shardCount;
+  private final boolean shardByShop;
+  private final PaymentAggregator totals;
+  private long[] customerCounts;
+  private final long[][] shopCounts = new long[PAYMENT_TYPES.length][];
+
+  public PartialAggregate(CustomerDirectory customers) {
+    this(customers, 0, 1, false);
+  }
+
+  /**
+   * Only aggregates the payments whose shop, or shop and customer, hash to the given shard.
+   */
+  public PartialAggregate(CustomerDirectory customers, int shard, int shardCount,
+      boolean shardByShop) {
+    if (shardCount < 1 || shard < 0 || shard >= shardCount) {
+      throw new IllegalArgumentException("Invalid shard: " + shard + "/" + shardCount);
+    }
+    this.customers = customers;
+    this.shard = shard;
+    this.shardCount = shardCount;
+    this.shardByShop = shardByShop;
+    this.totals = new PaymentAggregator(customers);
+    this.customerCounts = new long[Math.max(1, customers.size())];
+    for (int i = 0; i < shopCounts.length; i++) {
+      shopCounts[i] = new long[Math.max(1, customers.getShopCount())];
+    }
+  }
+
+  public static int shardOf(String shopId, String customerId, int shardCount,
+      boolean shardByShop) {
+    int hash = shardByShop ? shopId.hashCode() : shopId.hashCode() * 31 + customerId.hashCode();
+    return Math.floorMod(hash, shardCount);
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    if (shardCount > 1 && shardOf(payment.getShopId(), payment.getCustomerId(), shardCount,
+        shardByShop) != shard) {
+      return;
+    }
+    int customerIndex = customers.indexOf(payment);
+    int shopIndex = customerIndex >= 0 ? customers.getShopIndex(customerIndex) :
+        customers.shopIndexOf(payment.getShopId());
+    add(customerIndex, shopIndex, payment.getType(), payment.getAmountUnits(),
+        payment.getAmountScale(), 1);
+  }
+
+  private void add(int customerIndex, int shopIndex, PaymentType type, long units, int scale,
+      long count) {
+    totals.add(customerIndex, shopIndex, type, units, scale);
+    if (customerIndex >= 0) {
+      customerCounts = grow(customerCounts, customerIndex);
+      customerCounts[customerIndex] += count;
+    }
+    if (shopIndex >= 0) {
+      shopCounts[type.ordinal()] = grow(shopCounts[type.ordinal()], shopIndex);
+      shopCounts[type.ordinal()][shopIndex] += count;
+    }
+  }
+
+  private static long[] grow(long[] counts, int index) {
+    return index < counts.length ? counts : Arrays.copyOf(counts, Math.max(index + 1,
+        counts.length * 2));
+  }
+
+  @Override
+  public PartialAggregate newPartial() {
+    return new PartialAggregate(customers, shard, shardCount, shardByShop);
+  }
+
+  @Override
+  public void merge(PartialAggregate other) {
+    totals.merge(other.totals);
+    for (int i = 0; i < other.customerCounts.length; i++) {
+      if (other.customerCounts[i] != 0) {
+        customerCounts = grow(customerCounts, i);
+        customerCounts[i] += other.customerCounts[i];
+      }
+    }
+    for (int type = 0; type < shopCounts.length; type++) {
+      for (int i = 0; i < other.shopCounts[type].length; i++) {
+        if (other.shopCounts[type][i] != 0) {
+          shopCounts[type] = grow(shopCounts[type], i);
+          shopCounts[type][i] += other.shopCounts[type][i];
+        }
+      }
+    }
+  }
+
+  public PaymentAggregator getTotals() {
+    return totals;
+  }
+
+  public long getCustomerCount(int customerIndex) {
+    return customerIndex < customerCounts.length ? customerCounts[customerIndex] : 0;
+  }
+
+  public long getShopCount(int shopIndex, PaymentType type) {
+    long[] counts = shopCounts[type.ordinal()];
+    return shopIndex < counts.length ? counts[shopIndex] : 0;
+  }
+
+  /**
+   * The number of payments of all the shops, the ones of unknown customers included.
+   */
+  public long getPaymentCount() {
+    long count = 0;
+    for (long[] counts : shopCounts) {
+      for (long shopCount : counts) {
+        count += shopCount;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Writes the non-zero totals to a gzip compressed partial file, replacing it atomically.
+   */
+  public void write(String fileName) throws IOException {
+    Path target = Paths.get(fileName);
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(temp))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(FixedPoint.SCALE);
+      out.writeInt(customers.getShopCount());
+      for (int i = 0; i < customers.getShopCount(); i++) {
+        out.writeUTF(customers.getShopId(i));
+      }
+      AmountTotals customerTotals = totals.getCustomerTotals();
+      int entries = 0;
+      for (int i = 0; i < customers.size(); i++) {
+        if (getCustomerCount(i) != 0) {
+          entries++;
+        }
+      }
+      out.writeInt(entries);
+      for (int i = 0; i < customers.size(); i++) {
+        if (getCustomerCount(i) != 0) {
+          out.writeInt(customers.getShopIndex(i));
+          out.writeUTF(customers.getCustomerId(i));
+          out.writeLong(customerTotals.getUnits(i));
+          out.writeInt(customerTotals.getScale(i));
+          out.writeLong(getCustomerCount(i));
+        }
+      }
+      out.writeInt(PAYMENT_TYPES.length);
+      for (PaymentType type : PAYMENT_TYPES) {
+        AmountTotals shopTotals = totals.getShopTotals(type);
+        out.writeUTF(type.name());
+        entries = 0;
+        for (int i = 0; i < customers.getShopCount(); i++) {
+          if (getShopCount(i, type) != 0) {
+            entries++;
+          }
+        }
+        out.writeInt(entries);
+        for (int i = 0; i < customers.getShopCount(); i++) {
+          if (getShopCount(i, type) != 0) {
+            out.writeInt(i);
+            out.writeLong(shopTotals.getUnits(i));
+            out.writeInt(shopTotals.getScale(i));
+            out.writeLong(getShopCount(i, type));
+          }
+        }
+      }
+    }
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Adds the totals of a partial file. The totals of customers and shops this directory doesn't
+   * know are skipped and logged.
+   */
+  public void read(String fileName) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(Paths.get(fileName)))))) {
+      read(in, fileName);
+    } catch (IllegalArgumentException | IndexOutOfBoundsException |
+        NegativeArraySizeException e) {
+      StreamCorruptedException corrupted = new StreamCorruptedException(
+          "The partial aggregate file " + fileName + " is corrupt: " + e);
+      corrupted.initCause(e);
+      throw corrupted;
+    }
+  }
+
+  private void read(DataInputStream in, String fileName) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("Not a partial aggregate file: " + fileName);
+    }
+    int scale = in.readInt();
+    if (scale != FixedPoint.SCALE) {
+      throw new IOException("The partial aggregate file " + fileName +
+          " was written with amount scale " + scale + " instead of " + FixedPoint.SCALE);
+    }
+    String[] shopIds = new String[in.readInt()];
+    for (int i = 0; i < shopIds.length; i++) {
+      shopIds[i] = in.readUTF();
+    }
+    int unknownCustomers = 0;
+    int unknownShops = 0;
+    int entries = in.readInt();
+    for (int i = 0; i < entries; i++) {
+      int index = customers.indexOf(shopIds[in.readInt()], in.readUTF());
+      long units = in.readLong();
+      int amountScale = in.readInt();
+      long count = in.readLong();
+      if (index < 0) {
+        unknownCustomers++;
+      } else {
+        totals.getCustomerTotals().add(index, units, amountScale);
+        customerCounts = grow(customerCounts, index);
+        customerCounts[index] += count;
+      }
+    }
+    int types = in.readInt();
+    for (int t = 0; t < types; t++) {
+      PaymentType type = PaymentType.valueOf(in.readUTF());
+      entries = in.readInt();
+      for (int i = 0; i < entries; i++) {
+        int index = customers.shopIndexOf(shopIds[in.readInt()]);
+        long units = in.readLong();
+        int amountScale = in.readInt();
+        long count = in.readLong();
+        if (index < 0) {
+          unknownShops++;
+        } else {
+          totals.getShopTotals(type).add(index, units, amountScale);
+          shopCounts[type.ordinal()] = grow(shopCounts[type.ordinal()], index);
+          shopCounts[type.ordinal()][index] += count;
+        }
+      }
+    }
+    if (unknownCustomers > 0 || unknownShops > 0) {
+      log.error("Skipped the totals of {} unknown customers and {} unknown shops in {}",
+          unknownCustomers, unknownShops, fileName);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package otp.util;
+
+import otp.model.Customer;
+import otp.model.CustomerSum;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import otp.model.WebShopSum;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * Sums payments per customer and per shop in a single pass over the payments. The totals are
+ * kept in arrays indexed by the dense customer and shop indices of the {@link CustomerDirectory}.
+ */
+public class PaymentAggregator implements PaymentSink<PaymentAggregator> {
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+
+  private final CustomerDirectory customers;
+  private final boolean shopsOnly;
+  private final AmountTotals customerTotals;
+  private final AmountTotals[] shopTotals = new AmountTotals[PAYMENT_TYPES.length];
+
+  public PaymentAggregator(CustomerDirectory customers) {
+    this(customers, false);
+  }
+
+  private PaymentAggregator(CustomerDirectory customers, boolean shopsOnly) {
+    this.customers = customers;
+    this.shopsOnly = shopsOnly;
+    this.customerTotals = new AmountTotals(shopsOnly ? 0 : customers.size());
+    for (int i = 0; i < shopTotals.length; i++) {
+      shopTotals[i] = new AmountTotals(customers.getShopCount());
+    }
+  }
+
+  /**
+   * Returns an aggregator of the shop totals alone, without an array the size of the customers.
+   * Its customer totals stay zero.
+   */
+  public static PaymentAggregator ofShops(CustomerDirectory customers) {
+    return new PaymentAggregator(customers, true);
+  }
+
+  public void add(Payment payment) {
+    int customerIndex = customers.indexOf(payment);
+    int shopIndex = customerIndex >= 0 ? customers.getShopIndex(customerIndex) :
+        customers.shopIndexOf(payment.getShopId());
+    add(customerIndex, shopIndex, payment.getType(), payment.getAmountUnits(),
+        payment.getAmountScale());
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    add(payment);
+  }
+
+  void add(int customerIndex, int shopIndex, PaymentType type, long units, int scale) {
+    if (customerIndex >= 0 && !shopsOnly) {
+      customerTotals.add(customerIndex, units, scale);
+    }
+    if (shopIndex >= 0) {
+      shopTotals[type.ordinal()].add(shopIndex, units, scale);
+    }
+  }
+
+  public void addAll(Iterable<Payment> payments) {
+    for (Payment payment : payments) {
+      add(payment);
+    }
+  }
+
+  @Override
+  public PaymentAggregator newPartial() {
+    return new PaymentAggregator(customers, shopsOnly);
+  }
+
+  @Override
+  public void merge(PaymentAggregator other) {
+    if (!shopsOnly) {
+      customerTotals.add(other.customerTotals);
+    }
+    for (int i = 0; i < shopTotals.length; i++) {
+      shopTotals[i].add(other.shopTotals[i]);
+    }
+  }
+
+  AmountTotals getCustomerTotals() {
+    return customerTotals;
+  }
+
+  AmountTotals getShopTotals(PaymentType type) {
+    return shopTotals[type.ordinal()];
+  }
+
+  public CustomerDirectory getCustomers() {
+    return customers;
+  }
+
+  public List<CustomerSum> getCustomerSums() {
+    List<CustomerSum> customerSums = new ArrayList<>(customers.size());
+    for (int i = 0; i < customers.size(); i++) {
+      customerSums.add(new CustomerSum(customers.getName(i), customers.getAddress(i),
+          customerTotals.getUnits(i), customerTotals.getScale(i)));
+    }
+    return customerSums;
+  }
+
+  public List<CustomerSum> getCustomerSums(List<Customer> customerList) {
+    List<CustomerSum> customerSums = new ArrayList<>(customerList.size());
+    for (Customer customer : customerList) {
+      int index = customers.indexOf(customer.getShopId(), customer.getCustomerId());
+      customerSums.add(new CustomerSum(customer.getName(), customer.getAddress(),
+          customerTotals.getUnits(index), customerTotals.getScale(index)));
+    }
+    return customerSums;
+  }
+
+  public List<WebShopSum> getShopSums() {
+    return getShopSums(customers.getShopIds());
+  }
+
+  public List<WebShopSum> getShopSums(SortedSet<String> webshops) {
+    AmountTotals cardTotals = getShopTotals(PaymentType.CARD);
+    AmountTotals transferTotals = getShopTotals(PaymentType.TRANSFER);
+    List<WebShopSum> webShopSums = new ArrayList<>(webshops.size());
+    for (String webshop : webshops) {
+      int index = customers.shopIndexOf(webshop);
+      webShopSums.add(new WebShopSum(webshop, cardTotals.getUnits(index),
+          cardTotals.getScale(index), transferTotals.getUnits(index),
+          transferTotals.getScale(index)));
+    }
+    return webShopSums;
+  }
+}
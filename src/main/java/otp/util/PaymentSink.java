@@ -0,0 +1,15 @@
+package otp.util;
+
+import otp.model.Payment;
+import java.util.function.Consumer;
+
+/**
+ * Something that consumes the payment stream and can be split for parallel reads: every range
+ * of the file is read into its own {@link #newPartial()}, and the partials are merged back in
+ * file order.
+ */
+public interface PaymentSink<T extends PaymentSink<T>> extends Consumer<Payment> {
+  T newPartial();
+
+  void merge(T other);
+}
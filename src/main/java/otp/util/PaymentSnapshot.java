@@ -0,0 +1,274 @@
+package otp.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Memory mapped reader of the payment snapshots written by {@link PaymentSnapshotWriter}.
+ *
+ * <p>The file starts with a header (magic, version, amount scale, bits per payment type, the
+ * fingerprint of the source files, the number of rows and the offset of the dictionary),
+ * followed by row groups of at most {@link #ROW_GROUP} rows and the dictionary of
+ * {@code shopId;customerId} keys. Every row group stores its columns one after the other,
+ * little-endian and 8-byte aligned: the amounts in fixed-point units, the packed payment types,
+ * the dictionary references, the epoch days of the payment dates and the amount scales. Bank
+ * account and card numbers are not kept, none of the reports needs them.
+ */
+public class PaymentSnapshot implements Closeable {
+  public static final String SNAPSHOT_FILE = "src/reports/payments.snapshot";
+  static final int MAGIC = 0x4f545053;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 40;
+  static final int ROW_GROUP = 1 << 16;
+  static final int TYPE_BITS =
+      Math.max(1, 32 - Integer.numberOfLeadingZeros(PaymentType.values().length - 1));
+  static final int TYPES_PER_WORD = 64 / TYPE_BITS;
+  private static final Logger log = LogManager.getLogger(PaymentSnapshot.class);
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+  private static final long TYPE_MASK = (1L << TYPE_BITS) - 1;
+
+  private final FileChannel channel;
+  private final long sourceFingerprint;
+  private final long rowCount;
+  private final long dictionaryOffset;
+  private final String[] shopIds;
+  private final String[] customerIds;
+
+  private PaymentSnapshot(FileChannel channel) throws IOException {
+    this.channel = channel;
+    if (channel.size() < HEADER_SIZE) {
+      throw new IOException("Not a payment snapshot");
+    }
+    ByteBuffer header = map(0, HEADER_SIZE);
+    if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+      throw new IOException("Not a payment snapshot");
+    }
+    int scale = header.getInt();
+    if (scale != FixedPoint.SCALE) {
+      throw new IOException("The payment snapshot was written with amount scale " + scale +
+          " instead of " + FixedPoint.SCALE);
+    }
+    int typeBits = header.getInt();
+    if (typeBits != TYPE_BITS) {
+      throw new IOException("The payment snapshot was written with " + typeBits +
+          " bits per payment type instead of " + TYPE_BITS);
+    }
+    sourceFingerprint = header.getLong();
+    rowCount = header.getLong();
+    dictionaryOffset = header.getLong();
+    ByteBuffer dictionary = map(dictionaryOffset, channel.size() - dictionaryOffset);
+    int entries = dictionary.getInt();
+    shopIds = new String[entries];
+    customerIds = new String[entries];
+    for (int i = 0; i < entries; i++) {
+      shopIds[i] = readString(dictionary);
+      customerIds[i] = readString(dictionary);
+    }
+  }
+
+  public static PaymentSnapshot open(String fileName) throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    try {
+      return new PaymentSnapshot(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Aggregates the payments from the snapshot when it was written from the same customer and
+   * payment files and the same loaded customers, otherwise parses the payments and writes a new
+   * snapshot for the next run.
+   */
+  public static PaymentAggregator aggregate(String customersFile, CustomerDirectory customers,
+      String paymentsFile, String snapshotFile) {
+    long fingerprint;
+    try {
+      fingerprint = (IncrementalUtil.fingerprint(Paths.get(customersFile)) * 31 +
+          IncrementalUtil.fingerprint(customers)) * 31 +
+          IncrementalUtil.fingerprint(Paths.get(paymentsFile));
+    } catch (IOException e) {
+      log.error("Error reading file {}: {}", paymentsFile, e.getMessage());
+      return new PaymentAggregator(customers);
+    }
+
+    try (PaymentSnapshot snapshot = open(snapshotFile)) {
+      if (snapshot.getSourceFingerprint() == fingerprint) {
+        log.info("Reading {} payments from the snapshot {}", snapshot.size(), snapshotFile);
+        return snapshot.aggregate(customers);
+      }
+      log.info("The inputs changed since the snapshot {} was written", snapshotFile);
+    } catch (NoSuchFileException e) {
+      log.info("No payment snapshot found at {}", snapshotFile);
+    } catch (IOException e) {
+      log.error("Error reading the payment snapshot {}: {}", snapshotFile, e.getMessage());
+    }
+
+    PaymentAggregator aggregator = new PaymentAggregator(customers);
+    PaymentSnapshotWriter writer;
+    try {
+      writer = new PaymentSnapshotWriter(snapshotFile, customers, fingerprint);
+    } catch (IOException e) {
+      log.error("Error writing the payment snapshot {}: {}", snapshotFile, e.getMessage());
+      CSVReaderUtil.readPayments(paymentsFile, customers, aggregator::add);
+      return aggregator;
+    }
+    CSVReaderUtil.readPayments(paymentsFile, customers, payment -> {
+      aggregator.add(payment);
+      writer.accept(payment);
+    });
+    try {
+      writer.close();
+    } catch (IOException e) {
+      log.error("Error writing the payment snapshot {}: {}", snapshotFile, e.getMessage());
+    }
+    return aggregator;
+  }
+
+  public long size() {
+    return rowCount;
+  }
+
+  public long getSourceFingerprint() {
+    return sourceFingerprint;
+  }
+
+  public PaymentAggregator aggregate(CustomerDirectory customers) throws IOException {
+    int types = PAYMENT_TYPES.length;
+    long[] sums = new long[shopIds.length * types];
+    byte[] scales = new byte[sums.length];
+    Arrays.fill(scales, (byte) -1);
+    forEachGroup(group -> {
+      for (int i = 0; i < group.rows; i++) {
+        int slot = group.refs.get(i) * types + group.type(i);
+        sums[slot] = FixedPoint.add(sums[slot], group.units.get(i));
+        byte scale = group.scale(i);
+        if (scale > scales[slot]) {
+          scales[slot] = scale;
+        }
+      }
+    });
+
+    PaymentAggregator aggregator = new PaymentAggregator(customers);
+    for (int ref = 0; ref < shopIds.length; ref++) {
+      int customerIndex = customers.indexOf(shopIds[ref], customerIds[ref]);
+      int shopIndex = customerIndex >= 0 ? customers.getShopIndex(customerIndex) :
+          customers.shopIndexOf(shopIds[ref]);
+      for (int type = 0; type < types; type++) {
+        int slot = ref * types + type;
+        if (scales[slot] >= 0) {
+          aggregator.add(customerIndex, shopIndex, PAYMENT_TYPES[type], sums[slot],
+              scales[slot]);
+        }
+      }
+    }
+    return aggregator;
+  }
+
+  public void forEach(Consumer<Payment> consumer) throws IOException {
+    forEachGroup(group -> {
+      for (int i = 0; i < group.rows; i++) {
+        int ref = group.refs.get(i);
+        Payment payment = new Payment();
+        payment.setShopId(shopIds[ref]);
+        payment.setCustomerId(customerIds[ref]);
+        payment.setType(PAYMENT_TYPES[group.type(i)]);
+        payment.setAmount(group.units.get(i), group.scale(i));
+        payment.setPaymentDay(group.days.get(i));
+        consumer.accept(payment);
+      }
+    });
+  }
+
+  private void forEachGroup(Consumer<RowGroup> consumer) throws IOException {
+    long position = HEADER_SIZE;
+    while (position < dictionaryOffset) {
+      int rows = map(position, 4).getInt();
+      int size = groupSize(rows);
+      consumer.accept(new RowGroup(map(position, size), rows));
+      position += size;
+    }
+  }
+
+  private ByteBuffer map(long position, long size) throws IOException {
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static int typeWords(int rows) {
+    return (rows + TYPES_PER_WORD - 1) / TYPES_PER_WORD;
+  }
+
+  static int groupSize(int rows) {
+    return 8 + rows * 8 + typeWords(rows) * 8 + rows * 8 + (rows + 7) / 8 * 8;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static class RowGroup {
+    private final int rows;
+    private final LongBuffer units;
+    private final LongBuffer types;
+    private final IntBuffer refs;
+    private final IntBuffer days;
+    private final ByteBuffer buffer;
+    private final int scales;
+
+    private RowGroup(ByteBuffer buffer, int rows) {
+      this.rows = rows;
+      this.buffer = buffer;
+      int position = 8;
+      units = slice(buffer, position).asLongBuffer();
+      position += rows * 8;
+      types = slice(buffer, position).asLongBuffer();
+      position += typeWords(rows) * 8;
+      refs = slice(buffer, position).asIntBuffer();
+      position += rows * 4;
+      days = slice(buffer, position).asIntBuffer();
+      position += rows * 4;
+      scales = position;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position) {
+      buffer.position(position);
+      return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int type(int row) {
+      long word = types.get(row / TYPES_PER_WORD);
+      return (int) (word >>> (row % TYPES_PER_WORD * TYPE_BITS) & TYPE_MASK);
+    }
+
+    private byte scale(int row) {
+      return buffer.get(scales + row);
+    }
+  }
+}
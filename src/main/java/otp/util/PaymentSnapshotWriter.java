@@ -0,0 +1,181 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Writes validated payments into the columnar format read by {@link PaymentSnapshot}. Rows are
+ * buffered one row group at a time, the file only replaces the target when it is closed. A write
+ * error stops the writer, and is thrown from {@link #close()}, so the caller's read goes on.
+ */
+public class PaymentSnapshotWriter implements Consumer<Payment>, Closeable {
+  private final CustomerDirectory customers;
+  private final long sourceFingerprint;
+  private final Path target;
+  private final Path temp;
+  private final FileChannel channel;
+  private int[] dictionary = new int[0];
+  private int[] entries = new int[16];
+  private int entryCount;
+  private final long[] units = new long[PaymentSnapshot.ROW_GROUP];
+  private final long[] types = new long[PaymentSnapshot.typeWords(PaymentSnapshot.ROW_GROUP)];
+  private final int[] refs = new int[PaymentSnapshot.ROW_GROUP];
+  private final int[] days = new int[PaymentSnapshot.ROW_GROUP];
+  private final byte[] scales = new byte[PaymentSnapshot.ROW_GROUP];
+  private final ByteBuffer buffer;
+  private int rows;
+  private long rowCount;
+  private IOException error;
+
+  public PaymentSnapshotWriter(String fileName, CustomerDirectory customers, long sourceFingerprint)
+      throws IOException {
+    this.customers = customers;
+    this.sourceFingerprint = sourceFingerprint;
+    this.target = Paths.get(fileName);
+    this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+    this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    this.buffer = ByteBuffer.allocateDirect(PaymentSnapshot.groupSize(PaymentSnapshot.ROW_GROUP))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    channel.position(PaymentSnapshot.HEADER_SIZE);
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    if (Objects.nonNull(error)) {
+      return;
+    }
+    int customerIndex = customers.indexOf(payment);
+    if (customerIndex < 0) {
+      throw new IllegalArgumentException("The payment refers to an unknown customer: " +
+          payment.getShopId() + ";" + payment.getCustomerId());
+    }
+    if (payment.getAmountScale() > Byte.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "The scale of the amount is too large: " + payment.getAmountScale());
+    }
+    if (customerIndex >= dictionary.length) {
+      int length = dictionary.length;
+      dictionary = Arrays.copyOf(dictionary, Math.max(customerIndex + 1, length * 2));
+      Arrays.fill(dictionary, length, dictionary.length, -1);
+    }
+    int ref = dictionary[customerIndex];
+    if (ref < 0) {
+      ref = entryCount++;
+      dictionary[customerIndex] = ref;
+      if (ref == entries.length) {
+        entries = Arrays.copyOf(entries, ref * 2);
+      }
+      entries[ref] = customerIndex;
+    }
+    int word = rows / PaymentSnapshot.TYPES_PER_WORD;
+    int shift = rows % PaymentSnapshot.TYPES_PER_WORD * PaymentSnapshot.TYPE_BITS;
+    if (shift == 0) {
+      types[word] = 0;
+    }
+    types[word] |= (long) payment.getType().ordinal() << shift;
+    units[rows] = payment.getAmountUnits();
+    refs[rows] = ref;
+    days[rows] = payment.getPaymentDay();
+    scales[rows] = (byte) payment.getAmountScale();
+    rowCount++;
+    if (++rows == PaymentSnapshot.ROW_GROUP) {
+      try {
+        flush();
+      } catch (IOException e) {
+        error = e;
+      }
+    }
+  }
+
+  private void flush() throws IOException {
+    if (rows == 0) {
+      return;
+    }
+    buffer.clear();
+    buffer.putInt(rows).putInt(0);
+    buffer.asLongBuffer().put(units, 0, rows);
+    buffer.position(buffer.position() + rows * 8);
+    int words = PaymentSnapshot.typeWords(rows);
+    buffer.asLongBuffer().put(types, 0, words);
+    buffer.position(buffer.position() + words * 8);
+    buffer.asIntBuffer().put(refs, 0, rows);
+    buffer.position(buffer.position() + rows * 4);
+    buffer.asIntBuffer().put(days, 0, rows);
+    buffer.position(buffer.position() + rows * 4);
+    buffer.put(scales, 0, rows);
+    while (buffer.position() % 8 != 0) {
+      buffer.put((byte) 0);
+    }
+    buffer.flip();
+    write(buffer);
+    rows = 0;
+  }
+
+  private void write(ByteBuffer source) throws IOException {
+    while (source.hasRemaining()) {
+      channel.write(source);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (Objects.nonNull(error)) {
+        throw error;
+      }
+      flush();
+      long dictionaryOffset = channel.position();
+      List<byte[]> keys = new ArrayList<>(entryCount * 2);
+      int dictionarySize = 4;
+      for (int i = 0; i < entryCount; i++) {
+        for (String key : new String[] {customers.getCustomerShopId(entries[i]),
+            customers.getCustomerId(entries[i])}) {
+          byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+          keys.add(bytes);
+          dictionarySize += 4 + bytes.length;
+        }
+      }
+      ByteBuffer dictionaryBuffer =
+          ByteBuffer.allocate(dictionarySize).order(ByteOrder.LITTLE_ENDIAN);
+      dictionaryBuffer.putInt(entryCount);
+      for (byte[] key : keys) {
+        dictionaryBuffer.putInt(key.length).put(key);
+      }
+      dictionaryBuffer.flip();
+      write(dictionaryBuffer);
+
+      ByteBuffer header =
+          ByteBuffer.allocate(PaymentSnapshot.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(PaymentSnapshot.MAGIC).putInt(PaymentSnapshot.VERSION)
+          .putInt(FixedPoint.SCALE).putInt(PaymentSnapshot.TYPE_BITS)
+          .putLong(sourceFingerprint).putLong(rowCount).putLong(dictionaryOffset);
+      header.flip();
+      channel.position(0);
+      write(header);
+    } catch (IOException e) {
+      channel.close();
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    channel.close();
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,41 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sums the payments per payment type: one {@code type;sum} line per type.
+ */
+public class PaymentTypeReportStage implements ReportStage {
+  private static final PaymentType[] PAYMENT_TYPES = PaymentType.values();
+
+  private final AmountTotals totals = new AmountTotals(PAYMENT_TYPES.length);
+
+  @Override
+  public void accept(Payment payment) {
+    totals.add(payment.getType().ordinal(), payment.getAmountUnits(), payment.getAmountScale());
+  }
+
+  @Override
+  public ReportStage newPartial() {
+    return new PaymentTypeReportStage();
+  }
+
+  @Override
+  public void merge(ReportStage other) {
+    totals.add(((PaymentTypeReportStage) other).totals);
+  }
+
+  @Override
+  public void write(String fileName) {
+    List<String> reportLines = new ArrayList<>(PAYMENT_TYPES.length);
+    for (PaymentType type : PAYMENT_TYPES) {
+      reportLines.add(type.getValue() + ";" + FixedPoint.toBigDecimal(
+          totals.getUnits(type.ordinal()), totals.getScale(type.ordinal())));
+    }
+    ReportUtil.writeReport(reportLines, fileName, "payment types");
+  }
+}
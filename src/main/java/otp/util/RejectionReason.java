@@ -0,0 +1,59 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+
+/**
+ * Reason codes of rejected input lines. The message is logged with the listed fields of the line
+ * as parameters, {@link #LINE} standing for the whole line.
+ */
+public enum RejectionReason {
+  CUSTOMER_FIELD_COUNT(
+      "The provided line of customer data doesn't contain the required number of fields (4): {}",
+      RejectionReason.LINE),
+  CUSTOMER_EMPTY_SHOP_ID("The shop identifier must not be empty"),
+  CUSTOMER_EMPTY_CUSTOMER_ID("The customer identifier must not be empty"),
+  CUSTOMER_EMPTY_NAME("The customer name must not be empty"),
+  CUSTOMER_EMPTY_ADDRESS("The customer address must not be empty"),
+  CUSTOMER_UNKNOWN_SHOP("The shop identifier is none of the allowed ones: {}",
+      RejectionReason.LINE),
+  CUSTOMER_DUPLICATE("The customer id {} for the given shop id {} is not unique!", 1, 0),
+  PAYMENT_FIELD_COUNT(
+      "The provided line of payment data doesn't contain the required number of fields (7): {}",
+      RejectionReason.LINE),
+  PAYMENT_EMPTY_SHOP_ID("The shop identifier must not be empty"),
+  PAYMENT_EMPTY_CUSTOMER_ID("The customer identifier must not be empty"),
+  PAYMENT_EMPTY_TYPE("The payment method must not be empty"),
+  PAYMENT_EMPTY_AMOUNT("The paid amount must not be empty"),
+  PAYMENT_EMPTY_DATE("The date of transaction must not be empty"),
+  PAYMENT_UNKNOWN_CUSTOMER(
+      "The provided customer doesn't exist with shop id = {} and customer id = {}", 0, 1),
+  PAYMENT_INVALID_TYPE("The provided payment type is invalid: {}", 2),
+  PAYMENT_MISSING_CARD_NUMBER("No card number present for a payment by card."),
+  PAYMENT_MISSING_ACCOUNT_NUMBER("No account number present for a payment by transfer."),
+  PAYMENT_AMOUNT_OUT_OF_RANGE("The provided amount of the transaction doesn't fit into " +
+      FixedPoint.SCALE + " decimal places: {}", 3),
+  PAYMENT_INVALID_AMOUNT("The provided amount of the transaction is invalid: {}", 3),
+  PAYMENT_INVALID_DATE("The provided transaction date of the transaction is invalid: {}", 6);
+
+  public static final int LINE = -1;
+
+  private final String message;
+  private final int[] arguments;
+
+  RejectionReason(String message, int... arguments) {
+    this.message = message;
+    this.arguments = arguments;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  Object[] arguments(FieldTokenizer fields) {
+    Object[] values = new Object[arguments.length];
+    for (int i = 0; i < arguments.length; i++) {
+      values[i] = arguments[i] == LINE ? fields.line() : fields.field(arguments[i]);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,140 @@
+package otp.util;
+
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts rejected input lines per reason and shop. Only the first {@code samples} rejections of
+ * every reason are logged, the rest is just counted; all of them can be written to a separate
+ * rejects file instead. Safe to use from the parallel readers. The rejects file is truncated
+ * when the first line is written to it and stays open until {@link #close()}.
+ */
+public class RejectionReporter implements Closeable {
+  public static final int DEFAULT_SAMPLES = Integer.getInteger("otp.rejects.samples", 100);
+  public static final String DEFAULT_REJECTS_FILE = System.getProperty("otp.rejects.file");
+  private static final RejectionReason[] REASONS = RejectionReason.values();
+  private static final String NO_SHOP = "-";
+  private static final int REJECTS_BUFFER = 1 << 20;
+
+  private final Logger log;
+  private final int samples;
+  private final String rejectsFile;
+  private final AtomicLongArray counts = new AtomicLongArray(REASONS.length);
+  private final Map<String, AtomicLongArray> shopCounts = new ConcurrentHashMap<>();
+  private BufferedWriter rejects;
+  private boolean rejectsFailed;
+  private boolean rejectsOpened;
+
+  public RejectionReporter(Logger log, int samples, String rejectsFile) {
+    this.log = log;
+    this.samples = samples;
+    this.rejectsFile = rejectsFile;
+  }
+
+  public void reject(RejectionReason reason, FieldTokenizer fields) {
+    String shopId = fields.fieldCount() > 0 && !fields.isBlank(0) ? fields.field(0) : NO_SHOP;
+    shopCounts.computeIfAbsent(shopId, key -> new AtomicLongArray(REASONS.length))
+        .incrementAndGet(reason.ordinal());
+    long count = counts.incrementAndGet(reason.ordinal());
+    if (count <= samples) {
+      log.error(reason.getMessage(), reason.arguments(fields));
+    } else if (count == samples + 1L) {
+      log.warn("More than {} lines were rejected with {}, the rest is only counted", samples,
+          reason);
+    }
+    if (Objects.nonNull(rejectsFile)) {
+      writeReject(reason, fields.line());
+    }
+  }
+
+  private synchronized void writeReject(RejectionReason reason, String line) {
+    if (rejectsFailed) {
+      return;
+    }
+    try {
+      if (Objects.isNull(rejects)) {
+        rejects = new BufferedWriter(Files.newBufferedWriter(Paths.get(rejectsFile),
+            StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            rejectsOpened ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING),
+            REJECTS_BUFFER);
+        rejectsOpened = true;
+      }
+      rejects.append(reason.name()).append(';').append(line).append('\n');
+    } catch (IOException e) {
+      rejectsFailed = true;
+      log.error("Error writing the rejected lines to {}: {}", rejectsFile, e.getMessage());
+    }
+  }
+
+  public long getCount(RejectionReason reason) {
+    return counts.get(reason.ordinal());
+  }
+
+  public long getCount(RejectionReason reason, String shopId) {
+    AtomicLongArray shop = shopCounts.get(shopId);
+    return Objects.isNull(shop) ? 0 : shop.get(reason.ordinal());
+  }
+
+  public long getTotal() {
+    long total = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Logs the number of rejected lines per reason and shop, and flushes the rejects file.
+   */
+  public synchronized void logSummary() {
+    if (Objects.nonNull(rejects)) {
+      try {
+        rejects.flush();
+      } catch (IOException e) {
+        log.error("Error writing the rejected lines to {}: {}", rejectsFile, e.getMessage());
+      }
+    }
+    long total = getTotal();
+    if (total == 0) {
+      log.info("No input lines were rejected");
+      return;
+    }
+    log.info("Rejected {} input lines:", total);
+    log.info(String.format("%-32s %-8s %12s", "reason", "shop", "lines"));
+    Map<String, AtomicLongArray> shops = new TreeMap<>(shopCounts);
+    for (RejectionReason reason : REASONS) {
+      for (Map.Entry<String, AtomicLongArray> shop : shops.entrySet()) {
+        long count = shop.getValue().get(reason.ordinal());
+        if (count > 0) {
+          log.info(String.format("%-32s %-8s %12d", reason, shop.getKey(), count));
+        }
+      }
+    }
+  }
+
+  /**
+   * Flushes and closes the rejects file. Lines rejected later are appended to it.
+   */
+  @Override
+  public synchronized void close() {
+    if (Objects.nonNull(rejects)) {
+      try {
+        rejects.close();
+      } catch (IOException e) {
+        log.error("Error writing the rejected lines to {}: {}", rejectsFile, e.getMessage());
+      }
+      rejects = null;
+    }
+  }
+}
@@ -0,0 +1,444 @@
+package otp.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Inputs, outputs and reports of a run. The settings are read from the properties file given by
+ * {@code --config=<file>} and can be overridden one by one with {@code --<key>=<value>}
+ * arguments, e.g. {@code --reports=customers,daily --report.daily.file=daily.csv}. The
+ * {@code --incremental}, {@code --snapshot}, {@code --partial}, {@code --merge} and
+ * {@code --serve} flags are short for the matching {@link #MODE}. Every key is described at its
+ * constant.
+ */
+public class ReportConfig {
+  /**
+   * The properties file of the settings, only as an argument.
+   */
+  public static final String CONFIG = "config";
+  /**
+   * The customers CSV file.
+   */
+  public static final String CUSTOMERS_FILE = "customers.file";
+  /**
+   * The payments CSV file. A directory, a glob or a {@code .gz} file is read by a
+   * {@link MultiFilePaymentReader} with {@link #THREADS} workers.
+   */
+  public static final String PAYMENTS_FILE = "payments.file";
+  /**
+   * The comma separated reports to write. The file of a report is set with
+   * {@code report.<name>.file}, {@code report.<name>.gzip=true} compresses it.
+   */
+  public static final String REPORTS = "reports";
+  /**
+   * The number of customers of the top report.
+   */
+  public static final String TOP_COUNT = "top.count";
+  /**
+   * How the payments are aggregated: {@code full}, {@code incremental}, {@code snapshot},
+   * {@code partial}, {@code merge} or {@code serve}, see the {@code MODE_} constants.
+   */
+  public static final String MODE = "mode";
+  /**
+   * The aggregate state kept between the runs of the incremental mode.
+   */
+  public static final String STATE_FILE = "state.file";
+  /**
+   * The columnar snapshot of the payments of the snapshot mode.
+   */
+  public static final String SNAPSHOT_FILE = "snapshot.file";
+  /**
+   * The number of threads reading the payments.
+   */
+  public static final String THREADS = "threads";
+  /**
+   * The first day of the date range reports (yyyy.MM.dd, inclusive).
+   */
+  public static final String RANGE_FROM = "range.from";
+  /**
+   * The last day of the date range reports (yyyy.MM.dd, inclusive).
+   */
+  public static final String RANGE_TO = "range.to";
+  /**
+   * The JSON file of the metrics of the run, they are logged if it isn't set.
+   */
+  public static final String METRICS_FILE = "metrics.file";
+  /**
+   * Whether the metrics are published as MBeans too.
+   */
+  public static final String METRICS_JMX = "metrics.jmx";
+  /**
+   * The comma separated shops customers are accepted from.
+   */
+  public static final String SHOPS = "shops";
+  /**
+   * Where the customers are kept: {@code heap}, or {@code offheap} in an
+   * {@link OffHeapCustomerDirectory}.
+   */
+  public static final String CUSTOMERS_STORE = "customers.store";
+  public static final String STORE_HEAP = "heap";
+  public static final String STORE_OFF_HEAP = "offheap";
+  /**
+   * How the payments file is read: {@code chunked} splits it between {@link #THREADS}
+   * readers, {@code staged} uses a {@link StagedPaymentReader} and writes the reports
+   * concurrently.
+   */
+  public static final String READER = "reader";
+  public static final String READER_CHUNKED = "chunked";
+  public static final String READER_STAGED = "staged";
+  /**
+   * How the customer reports are summed: {@code memory}, or {@code external} within
+   * {@link #SPILL_MEMORY}, spilling sorted runs to {@link #SPILL_DIR}.
+   */
+  public static final String AGGREGATION = "aggregation";
+  public static final String AGGREGATION_MEMORY = "memory";
+  public static final String AGGREGATION_EXTERNAL = "external";
+  /**
+   * The megabytes of the external aggregation, shared by all its readers and reports.
+   */
+  public static final String SPILL_MEMORY = "spill.memory";
+  /**
+   * The directory of the sorted runs of the external aggregation.
+   */
+  public static final String SPILL_DIR = "spill.dir";
+  /**
+   * The {@link PartialAggregate} the partial mode writes instead of reports.
+   */
+  public static final String PARTIAL_FILE = "partial.file";
+  /**
+   * The comma separated partial files the merge mode writes the reports of.
+   */
+  public static final String PARTIAL_FILES = "partial.files";
+  /**
+   * The {@code <index>/<count>} shard of the payments the partial mode aggregates.
+   */
+  public static final String SHARD = "shard";
+  /**
+   * What the payments are sharded by: {@code customer} or {@code shop}.
+   */
+  public static final String SHARD_KEY = "shard.key";
+  public static final String SHARD_KEY_CUSTOMER = "customer";
+  public static final String SHARD_KEY_SHOP = "shop";
+  /**
+   * The address the {@link ReportServer} of the serve mode listens on.
+   */
+  public static final String SERVER_HOST = "server.host";
+  /**
+   * The port the {@link ReportServer} of the serve mode listens on.
+   */
+  public static final String SERVER_PORT = "server.port";
+  /**
+   * The number of threads answering queries, {@link #THREADS} by default.
+   */
+  public static final String SERVER_THREADS = "server.threads";
+  /**
+   * Reads all the payments and writes the reports.
+   */
+  public static final String MODE_FULL = "full";
+  /**
+   * Reads only the payments appended since the {@link #STATE_FILE} was saved. Needs a single
+   * uncompressed payments file.
+   */
+  public static final String MODE_INCREMENTAL = "incremental";
+  /**
+   * Aggregates the {@link #SNAPSHOT_FILE}, written from the payments file when
+   * it's missing or outdated. Needs a single uncompressed payments file.
+   */
+  public static final String MODE_SNAPSHOT = "snapshot";
+  /**
+   * Writes the totals of the {@link #SHARD} to the {@link #PARTIAL_FILE}.
+   */
+  public static final String MODE_PARTIAL = "partial";
+  /**
+   * Writes the reports of the {@link #PARTIAL_FILES}.
+   */
+  public static final String MODE_MERGE = "merge";
+  /**
+   * Loads the payments once and answers queries with a {@link ReportServer}.
+   */
+  public static final String MODE_SERVE = "serve";
+  private static final String DEFAULT_REPORTS = "customers,top,shops";
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
+  private final Properties properties;
+
+  public ReportConfig() {
+    this(new Properties());
+  }
+
+  public ReportConfig(Properties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Reads the settings of the command line, where {@link #CONFIG} names a properties file of
+   * further settings. An unknown argument or an invalid thread count is thrown as an
+   * {@link IllegalArgumentException}, an unreadable config file as an
+   * {@link UncheckedIOException}.
+   */
+  public static ReportConfig fromArgs(String... args) {
+    Properties arguments = new Properties();
+    for (String arg : args) {
+      if (arg.equals("--" + MODE_INCREMENTAL) || arg.equals("--" + MODE_SNAPSHOT) ||
+          arg.equals("--" + MODE_PARTIAL) || arg.equals("--" + MODE_MERGE) ||
+          arg.equals("--" + MODE_SERVE)) {
+        arguments.setProperty(MODE, arg.substring(2));
+      } else if (arg.startsWith("--") && arg.indexOf('=') > 2) {
+        arguments.setProperty(arg.substring(2, arg.indexOf('=')),
+            arg.substring(arg.indexOf('=') + 1));
+      } else {
+        throw new IllegalArgumentException("Unknown argument: " + arg);
+      }
+    }
+
+    Properties properties = new Properties();
+    String configFile = arguments.getProperty(CONFIG);
+    if (Objects.nonNull(configFile)) {
+      try (Reader reader = Files.newBufferedReader(Paths.get(configFile),
+          StandardCharsets.UTF_8)) {
+        properties.load(reader);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Error reading file " + configFile, e);
+      }
+    }
+    properties.putAll(arguments);
+    ReportConfig config = new ReportConfig(properties);
+    config.getThreads();
+    return config;
+  }
+
+  public String getProperty(String key, String defaultValue) {
+    return properties.getProperty(key, defaultValue);
+  }
+
+  public int getIntProperty(String key, int defaultValue) {
+    String value = properties.getProperty(key);
+    if (Objects.isNull(value)) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("The value of " + key + " must be a number: " + value);
+    }
+  }
+
+  public LocalDate getDateProperty(String key) {
+    String value = properties.getProperty(key);
+    if (Objects.isNull(value) || value.trim().isEmpty()) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(value.trim(), DATE_FORMAT);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("The value of " + key + " must be a yyyy.MM.dd date: " +
+          value);
+    }
+  }
+
+  public ReportConfig setProperty(String key, String value) {
+    properties.setProperty(key, value);
+    return this;
+  }
+
+  public String getCustomersFile() {
+    return getProperty(CUSTOMERS_FILE, CSVReaderUtil.CUSTOMERS_FILE);
+  }
+
+  public String getPaymentsFile() {
+    return getProperty(PAYMENTS_FILE, CSVReaderUtil.PAYMENTS_FILE);
+  }
+
+  public List<String> getReports() {
+    List<String> reports = new ArrayList<>();
+    for (String report : getProperty(REPORTS, DEFAULT_REPORTS).split(",")) {
+      if (!report.trim().isEmpty()) {
+        reports.add(report.trim());
+      }
+    }
+    return reports;
+  }
+
+  public Set<String> getShops() {
+    String shops = getProperty(SHOPS, null);
+    if (Objects.isNull(shops)) {
+      return CSVReaderUtil.DEFAULT_SHOPS;
+    }
+    Set<String> allowed = new HashSet<>();
+    for (String shop : shops.split(",")) {
+      if (!shop.trim().isEmpty()) {
+        allowed.add(shop.trim());
+      }
+    }
+    return allowed;
+  }
+
+  public String getReportFile(String report, String defaultFile) {
+    String fileName = getProperty("report." + report + ".file", defaultFile);
+    if (Boolean.parseBoolean(getProperty("report." + report + ".gzip", "false")) &&
+        !fileName.endsWith(ReportWriter.GZIP_SUFFIX)) {
+      fileName += ReportWriter.GZIP_SUFFIX;
+    }
+    return fileName;
+  }
+
+  public int getTopCount() {
+    return getIntProperty(TOP_COUNT, 2);
+  }
+
+  public String getMode() {
+    String mode = getProperty(MODE, MODE_FULL);
+    if ((mode.equals(MODE_INCREMENTAL) || mode.equals(MODE_SNAPSHOT)) &&
+        MultiFilePaymentReader.isMultiFile(getPaymentsFile())) {
+      throw new IllegalArgumentException("The " + mode + " mode needs a single " +
+          "uncompressed payments file, not a directory, a glob or a .gz file: " +
+          getPaymentsFile());
+    }
+    return mode;
+  }
+
+  public String getStateFile() {
+    return getProperty(STATE_FILE, IncrementalUtil.STATE_FILE);
+  }
+
+  public String getSnapshotFile() {
+    return getProperty(SNAPSHOT_FILE, PaymentSnapshot.SNAPSHOT_FILE);
+  }
+
+  public String getPartialFile() {
+    return getProperty(PARTIAL_FILE, PartialAggregate.PARTIAL_FILE);
+  }
+
+  public List<String> getPartialFiles() {
+    List<String> files = new ArrayList<>();
+    for (String file : getProperty(PARTIAL_FILES, "").split(",")) {
+      if (!file.trim().isEmpty()) {
+        files.add(file.trim());
+      }
+    }
+    if (files.isEmpty()) {
+      throw new IllegalArgumentException("The " + PARTIAL_FILES + " to merge are missing");
+    }
+    return files;
+  }
+
+  /**
+   * Returns the index and the count of the {@code shard}, {0, 1} if there's none.
+   */
+  public int[] getShard() {
+    String shard = getProperty(SHARD, "0/1").trim();
+    int slash = shard.indexOf('/');
+    try {
+      int index = Integer.parseInt(shard.substring(0, Math.max(0, slash)));
+      int count = Integer.parseInt(shard.substring(slash + 1));
+      if (count > 0 && index >= 0 && index < count) {
+        return new int[] {index, count};
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("The value of " + SHARD +
+        " must be <index>/<count> with 0 <= index < count: " + shard);
+  }
+
+  public boolean isShardByShop() {
+    String key = getProperty(SHARD_KEY, SHARD_KEY_CUSTOMER);
+    if (!key.equals(SHARD_KEY_CUSTOMER) && !key.equals(SHARD_KEY_SHOP)) {
+      throw new IllegalArgumentException("Unknown shard key: " + key);
+    }
+    return key.equals(SHARD_KEY_SHOP);
+  }
+
+  public String getServerHost() {
+    return getProperty(SERVER_HOST, "127.0.0.1");
+  }
+
+  public int getServerPort() {
+    return getIntProperty(SERVER_PORT, 8080);
+  }
+
+  public int getServerThreads() {
+    int threads = getIntProperty(SERVER_THREADS, getThreads());
+    if (threads < 1) {
+      throw new IllegalArgumentException("The value of " + SERVER_THREADS +
+          " must be positive: " + threads);
+    }
+    return threads;
+  }
+
+  public int getThreads() {
+    int threads = getIntProperty(THREADS, ParallelPaymentReader.DEFAULT_PARALLELISM);
+    if (threads < 1) {
+      throw new IllegalArgumentException("The value of " + THREADS + " must be positive: " +
+          threads);
+    }
+    return threads;
+  }
+
+  public LocalDate getRangeFrom() {
+    return getDateProperty(RANGE_FROM);
+  }
+
+  public LocalDate getRangeTo() {
+    return getDateProperty(RANGE_TO);
+  }
+
+  public String getMetricsFile() {
+    return getProperty(METRICS_FILE, null);
+  }
+
+  public boolean isMetricsJmx() {
+    return Boolean.parseBoolean(getProperty(METRICS_JMX, "false"));
+  }
+
+  public boolean isOffHeapCustomers() {
+    String store = getProperty(CUSTOMERS_STORE, STORE_HEAP);
+    if (!store.equals(STORE_HEAP) && !store.equals(STORE_OFF_HEAP)) {
+      throw new IllegalArgumentException("Unknown customer store: " + store);
+    }
+    return store.equals(STORE_OFF_HEAP);
+  }
+
+  public boolean isStagedReader() {
+    String reader = getProperty(READER, READER_CHUNKED);
+    if (!reader.equals(READER_CHUNKED) && !reader.equals(READER_STAGED)) {
+      throw new IllegalArgumentException("Unknown payment reader: " + reader);
+    }
+    return reader.equals(READER_STAGED);
+  }
+
+  public boolean isExternalAggregation() {
+    String aggregation = getProperty(AGGREGATION, AGGREGATION_MEMORY);
+    if (!aggregation.equals(AGGREGATION_MEMORY) && !aggregation.equals(AGGREGATION_EXTERNAL)) {
+      throw new IllegalArgumentException("Unknown aggregation: " + aggregation);
+    }
+    return aggregation.equals(AGGREGATION_EXTERNAL);
+  }
+
+  public long getSpillMemory() {
+    int megabytes = getIntProperty(SPILL_MEMORY, 64);
+    if (megabytes < 1) {
+      throw new IllegalArgumentException("The value of " + SPILL_MEMORY + " must be positive: " +
+          megabytes);
+    }
+    return megabytes * (1L << 20);
+  }
+
+  public Path getSpillDirectory() {
+    return Paths.get(getProperty(SPILL_DIR, System.getProperty("java.io.tmpdir")));
+  }
+}
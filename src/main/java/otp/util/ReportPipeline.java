@@ -0,0 +1,273 @@
+package otp.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otp.model.Payment;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the reports requested by a {@link ReportConfig} over a single scan of the payments.
+ * Every report is a {@link ReportStage} fed with the same payment stream; new reports are
+ * plugged in with {@link #register(String, String, ReportStageFactory)}.
+ */
+public class ReportPipeline implements PaymentSink<ReportPipeline> {
+  private static final Logger log = LogManager.getLogger(ReportPipeline.class);
+  private static final Map<String, Registration> STAGES = new ConcurrentHashMap<>();
+
+  static {
+    register("customers", ReportUtil.CUSTOMER_REPORT_FILE,
+        (customers, config) -> config.isExternalAggregation() ?
+            new SpillingReportStage.Customers(customers, config.getSpillMemory(),
+                config.getSpillDirectory()) :
+            new AggregatorReportStage.Customers(customers));
+    register("top", ReportUtil.TOP_CUSTOMERS_REPORT_FILE,
+        (customers, config) -> config.isExternalAggregation() ?
+            new SpillingReportStage.TopCustomers(customers, config.getTopCount(),
+                config.getSpillMemory(), config.getSpillDirectory()) :
+            new AggregatorReportStage.TopCustomers(customers, config.getTopCount()));
+    register("shops", ReportUtil.WEB_SHOP_REPORT_FILE,
+        (customers, config) -> new AggregatorReportStage.WebShops(customers));
+    register("types", "src/reports/types.csv",
+        (customers, config) -> new PaymentTypeReportStage());
+    register("daily", "src/reports/daily.csv",
+        (customers, config) -> new DailyReportStage());
+    register("customers-range", "src/reports/report01-range.csv",
+        (customers, config) -> new DateRangeReportStage.Customers(customers,
+            config.getRangeFrom(), config.getRangeTo()));
+    register("shops-range", "src/reports/report02-range.csv",
+        (customers, config) -> new DateRangeReportStage.WebShops(customers,
+            config.getRangeFrom(), config.getRangeTo()));
+  }
+
+  private final ReportConfig config;
+  private final CustomerDirectory customers;
+  private final String[] names;
+  private final ReportStage[] stages;
+
+  public ReportPipeline(ReportConfig config, CustomerDirectory customers) {
+    this.config = config;
+    this.customers = customers;
+    List<String> names = new ArrayList<>();
+    List<ReportStage> stages = new ArrayList<>();
+    for (String name : config.getReports()) {
+      Registration registration = STAGES.get(name);
+      if (Objects.isNull(registration)) {
+        log.error("There's no report called {}", name);
+        continue;
+      }
+      names.add(name);
+      stages.add(registration.factory.create(customers, config));
+    }
+    this.names = names.toArray(new String[0]);
+    this.stages = stages.toArray(new ReportStage[0]);
+    AggregatorReportStage.share(this.stages);
+    SpillingReportStage.share(this.stages);
+  }
+
+  private ReportPipeline(ReportPipeline pipeline) {
+    this.config = pipeline.config;
+    this.customers = pipeline.customers;
+    this.names = pipeline.names;
+    this.stages = new ReportStage[pipeline.stages.length];
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = pipeline.stages[i].newPartial();
+    }
+    AggregatorReportStage.share(stages);
+    SpillingReportStage.share(stages);
+  }
+
+  public static void register(String name, String defaultFile, ReportStageFactory factory) {
+    STAGES.put(name, new Registration(defaultFile, factory));
+  }
+
+  public void run() {
+    Metrics.Timer scanTimer = Metrics.timer("phase.scan");
+    long start = scanTimer.start();
+    ReportPipeline result;
+    try {
+      result = aggregate(config.getMode());
+    } catch (UncheckedIOException e) {
+      log.error("{}: {}", e.getMessage(), e.getCause().getMessage());
+      result = null;
+    }
+    scanTimer.stop(start);
+    if (Objects.isNull(result)) {
+      return;
+    }
+    if (config.isStagedReader()) {
+      result.writeReportsConcurrently();
+    } else {
+      result.writeReports();
+    }
+  }
+
+  /**
+   * Aggregates the payments as the mode says, returning the pipeline to write the reports of,
+   * or null if there are no reports to write. Read errors are thrown, reports of part of the
+   * payments would look complete.
+   */
+  private ReportPipeline aggregate(String mode) {
+    if (mode.equals(ReportConfig.MODE_PARTIAL)) {
+      writePartial();
+      return null;
+    } else if (mode.equals(ReportConfig.MODE_MERGE)) {
+      PartialAggregate partials = readPartials();
+      if (Objects.isNull(partials)) {
+        return null;
+      }
+      addTotals(mode, partials.getTotals());
+    } else if (mode.equals(ReportConfig.MODE_INCREMENTAL)) {
+      addTotals(mode, IncrementalUtil.aggregate(config.getCustomersFile(), customers,
+          config.getPaymentsFile(), config.getStateFile(), config.getThreads()));
+    } else if (mode.equals(ReportConfig.MODE_SNAPSHOT)) {
+      addTotals(mode, PaymentSnapshot.aggregate(config.getCustomersFile(), customers,
+          config.getPaymentsFile(), config.getSnapshotFile()));
+    } else if (!mode.equals(ReportConfig.MODE_FULL)) {
+      throw new IllegalArgumentException("Unknown mode: " + mode);
+    } else {
+      return readPayments(config, customers, this);
+    }
+    return this;
+  }
+
+  /**
+   * Reads the payments of the configured files with the configured reader into the sink,
+   * returning the sink holding all of them.
+   */
+  public static <T extends PaymentSink<T>> T readPayments(ReportConfig config,
+      CustomerDirectory customers, T sink) {
+    if (MultiFilePaymentReader.isMultiFile(config.getPaymentsFile())) {
+      return new MultiFilePaymentReader(config.getThreads())
+          .readPayments(config.getPaymentsFile(), customers, sink);
+    } else if (config.isStagedReader()) {
+      new StagedPaymentReader(config.getThreads())
+          .readPayments(config.getPaymentsFile(), customers, sink);
+      return sink;
+    } else if (config.getThreads() > 1) {
+      return new ParallelPaymentReader(config.getThreads())
+          .readPayments(config.getPaymentsFile(), customers, sink);
+    }
+    CSVReaderUtil.readPayments(config.getPaymentsFile(), customers, sink);
+    return sink;
+  }
+
+  private void writePartial() {
+    int[] shard = config.getShard();
+    PartialAggregate partial = readPayments(config, customers,
+        new PartialAggregate(customers, shard[0], shard[1], config.isShardByShop()));
+    String fileName = config.getPartialFile();
+    try {
+      partial.write(fileName);
+      log.info("Wrote the totals of {} payments of shard {}/{} to {}",
+          partial.getPaymentCount(), shard[0], shard[1], fileName);
+    } catch (IOException e) {
+      log.error("Error writing the partial aggregate {}: {}", fileName, e.getMessage());
+    }
+  }
+
+  /**
+   * Adds up the partial files, or returns null if one of them can't be read: the reports of
+   * the others alone would silently miss payments.
+   */
+  private PartialAggregate readPartials() {
+    PartialAggregate partials = new PartialAggregate(customers);
+    for (String fileName : config.getPartialFiles()) {
+      try {
+        partials.read(fileName);
+      } catch (IOException e) {
+        log.error("Error reading the partial aggregate {}: {}", fileName, e.getMessage());
+        return null;
+      }
+    }
+    log.info("Merged the totals of {} payments from {} partial files",
+        partials.getPaymentCount(), config.getPartialFiles().size());
+    return partials;
+  }
+
+  private void addTotals(String mode, PaymentAggregator totals) {
+    for (int i = 0; i < stages.length; i++) {
+      if (Objects.nonNull(stages[i]) && !stages[i].addTotals(totals)) {
+        log.error("The {} report needs the payments themselves, it isn't available in {} mode",
+            names[i], mode);
+        stages[i] = null;
+      }
+    }
+  }
+
+  @Override
+  public void accept(Payment payment) {
+    for (ReportStage stage : stages) {
+      stage.accept(payment);
+    }
+  }
+
+  @Override
+  public ReportPipeline newPartial() {
+    return new ReportPipeline(this);
+  }
+
+  @Override
+  public void merge(ReportPipeline other) {
+    for (int i = 0; i < stages.length; i++) {
+      stages[i].merge(other.stages[i]);
+    }
+  }
+
+  public void writeReports() {
+    Metrics.Timer writeTimer = Metrics.timer("phase.write");
+    long start = writeTimer.start();
+    for (int i = 0; i < stages.length; i++) {
+      writeReport(i);
+    }
+    writeTimer.stop(start);
+  }
+
+  /**
+   * Writes every report on its own task. Reports sharing an aggregator only read it once the
+   * payments are aggregated, so they can be written at the same time.
+   */
+  public void writeReportsConcurrently() {
+    Metrics.Timer writeTimer = Metrics.timer("phase.write");
+    long start = writeTimer.start();
+    ExecutorService executor = StagedPaymentReader.newExecutor(Math.max(1, stages.length));
+    try {
+      CompletableFuture<?>[] writes = new CompletableFuture<?>[stages.length];
+      for (int i = 0; i < stages.length; i++) {
+        int stage = i;
+        writes[i] = CompletableFuture.runAsync(() -> writeReport(stage), executor);
+      }
+      CompletableFuture.allOf(writes).join();
+    } finally {
+      executor.shutdown();
+    }
+    writeTimer.stop(start);
+  }
+
+  private void writeReport(int stage) {
+    if (Objects.nonNull(stages[stage])) {
+      Metrics.Timer stageTimer = Metrics.timer("report." + names[stage]);
+      long stageStart = stageTimer.start();
+      String defaultFile = STAGES.get(names[stage]).defaultFile;
+      stages[stage].write(config.getReportFile(names[stage], defaultFile));
+      stageTimer.stop(stageStart);
+    }
+  }
+
+  private static class Registration {
+    private final String defaultFile;
+    private final ReportStageFactory factory;
+
+    private Registration(String defaultFile, ReportStageFactory factory) {
+      this.defaultFile = defaultFile;
+      this.factory = factory;
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package otp.util;
+
+import otp.model.CustomerSum;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import otp.model.WebShopSum;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The aggregates a {@link ReportServer} answers from, kept up to date while payments are
+ * appended. The totals live in a {@link ConcurrentPaymentAggregator}, so point lookups never
+ * wait for a snapshot. Date ranges are answered from a {@link DateRangeIndex} of the loaded
+ * payments plus a small one of the appended payments, which is rebuilt on the first range query
+ * after an append. Once enough payments were appended they are folded into the large index.
+ */
+public class ReportQueries {
+  public static final int COMPACT_THRESHOLD = 100_000;
+
+  private final CustomerDirectory customers;
+  private final ConcurrentPaymentAggregator totals;
+  private final int compactThreshold;
+  private final DateRangeAggregator days;
+  private DateRangeAggregator appendedDays;
+  private int appended;
+  private DateRangeIndex loadedIndex;
+  private RangeView rangeView;
+
+  public ReportQueries(Loader loaded) {
+    this(loaded, COMPACT_THRESHOLD);
+  }
+
+  public ReportQueries(Loader loaded, int compactThreshold) {
+    if (compactThreshold < 1) {
+      throw new IllegalArgumentException("The compact threshold must be positive: " +
+          compactThreshold);
+    }
+    this.customers = loaded.totals.getCustomers();
+    this.totals = new ConcurrentPaymentAggregator(customers);
+    this.totals.add(loaded.totals);
+    this.compactThreshold = compactThreshold;
+    this.days = loaded.days;
+    this.appendedDays = new DateRangeAggregator(customers);
+    this.loadedIndex = days.getIndex();
+  }
+
+  public CustomerDirectory getCustomers() {
+    return customers;
+  }
+
+  public void append(Payment payment) {
+    totals.add(payment);
+    synchronized (this) {
+      appendedDays.add(payment);
+      rangeView = null;
+      if (++appended >= compactThreshold) {
+        days.merge(appendedDays);
+        appendedDays = new DateRangeAggregator(customers);
+        appended = 0;
+        loadedIndex = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the customer's sum, between the days if any of them is given, or null if there's no
+   * such customer.
+   */
+  public CustomerSum getCustomerSum(String shopId, String customerId, LocalDate from,
+      LocalDate to) {
+    int index = customers.indexOf(shopId, customerId);
+    if (index < 0) {
+      return null;
+    }
+    AmountTotal total = isRange(from, to) ? rangeView().getCustomerTotal(index, from, to) :
+        totals.getCustomerTotal(index);
+    return new CustomerSum(customers.getName(index), customers.getAddress(index),
+        total.getUnits(), total.getScale());
+  }
+
+  /**
+   * Returns the shop's sums, between the days if any of them is given, or null if no customer
+   * belongs to the shop.
+   */
+  public WebShopSum getShopSum(String shopId, LocalDate from, LocalDate to) {
+    int index = customers.shopIndexOf(shopId);
+    if (index < 0) {
+      return null;
+    }
+    return getShopSum(shopId, index, isRange(from, to) ? rangeView() : null, from, to);
+  }
+
+  private WebShopSum getShopSum(String shopId, int index, RangeView view, LocalDate from,
+      LocalDate to) {
+    AmountTotal card;
+    AmountTotal transfer;
+    if (Objects.nonNull(view)) {
+      card = view.getShopTotal(index, PaymentType.CARD, from, to);
+      transfer = view.getShopTotal(index, PaymentType.TRANSFER, from, to);
+    } else {
+      card = totals.getShopTotal(index, PaymentType.CARD);
+      transfer = totals.getShopTotal(index, PaymentType.TRANSFER);
+    }
+    return new WebShopSum(shopId, card.getUnits(), card.getScale(), transfer.getUnits(),
+        transfer.getScale());
+  }
+
+  public List<WebShopSum> getShopSums(LocalDate from, LocalDate to) {
+    if (!isRange(from, to)) {
+      return totals.getShopSums();
+    }
+    RangeView view = rangeView();
+    List<WebShopSum> webShopSums = new ArrayList<>(customers.getShopCount());
+    for (String webshop : customers.getShopIds()) {
+      webShopSums.add(getShopSum(webshop, customers.shopIndexOf(webshop), view, from, to));
+    }
+    return webShopSums;
+  }
+
+  public List<CustomerSum> getTopCustomers(int numberOfCustomers) {
+    return totals.getTopCustomers(numberOfCustomers);
+  }
+
+  private static boolean isRange(LocalDate from, LocalDate to) {
+    return Objects.nonNull(from) || Objects.nonNull(to);
+  }
+
+  /**
+   * The indices of the moment, built again only after an append. They are immutable, so the
+   * queries run outside of the lock.
+   */
+  private synchronized RangeView rangeView() {
+    if (Objects.isNull(loadedIndex)) {
+      loadedIndex = days.getIndex();
+      rangeView = null;
+    }
+    if (Objects.isNull(rangeView)) {
+      rangeView = new RangeView(loadedIndex, appendedDays.getIndex());
+    }
+    return rangeView;
+  }
+
+  /**
+   * Loads the payments of the files before the server starts, split for the parallel readers.
+   */
+  public static class Loader implements PaymentSink<Loader> {
+    private final PaymentAggregator totals;
+    private final DateRangeAggregator days;
+
+    public Loader(CustomerDirectory customers) {
+      this.totals = new PaymentAggregator(customers);
+      this.days = new DateRangeAggregator(customers);
+    }
+
+    @Override
+    public void accept(Payment payment) {
+      totals.add(payment);
+      days.add(payment);
+    }
+
+    @Override
+    public Loader newPartial() {
+      return new Loader(totals.getCustomers());
+    }
+
+    @Override
+    public void merge(Loader other) {
+      totals.merge(other.totals);
+      days.merge(other.days);
+    }
+  }
+
+  private static class RangeView {
+    private final DateRangeIndex loaded;
+    private final DateRangeIndex appended;
+
+    private RangeView(DateRangeIndex loaded, DateRangeIndex appended) {
+      this.loaded = loaded;
+      this.appended = appended;
+    }
+
+    private AmountTotal getCustomerTotal(int index, LocalDate from, LocalDate to) {
+      AmountTotal total = loaded.getCustomerTotal(index, from, to);
+      total.add(appended.getCustomerTotal(index, from, to));
+      return total;
+    }
+
+    private AmountTotal getShopTotal(int index, PaymentType type, LocalDate from,
+        LocalDate to) {
+      AmountTotal total = loaded.getShopTotal(index, type, from, to);
+      total.add(appended.getShopTotal(index, type, from, to));
+      return total;
+    }
+  }
+}
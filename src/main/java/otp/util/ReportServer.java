@@ -0,0 +1,254 @@
+package otp.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otp.model.CustomerSum;
+import otp.model.Payment;
+import otp.model.WebShopSum;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers report queries over HTTP from the {@link ReportQueries} of a long running process, so
+ * a sum doesn't need another run of the reports. The answers are report lines:
+ * <ul>
+ * <li>{@code GET /customer?shop=<id>&customer=<id>} the customer's line of report01</li>
+ * <li>{@code GET /shop?shop=<id>} the shop's line of report02, {@code GET /shops} all of them</li>
+ * <li>{@code GET /top?n=<count>} the top customers, {@code top.count} of them by default</li>
+ * <li>{@code POST /payments} appends the payment lines of the body and answers
+ * {@code <accepted>;<rejected>}</li>
+ * </ul>
+ * The sum queries take optional {@code from} and {@code to} days (yyyy.MM.dd, both inclusive).
+ */
+public class ReportServer implements Closeable {
+  private static final Logger log = LogManager.getLogger(ReportServer.class);
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+  private static final AtomicInteger threadCount = new AtomicInteger();
+  private static final String NO_DELAY = "sun.net.httpserver.nodelay";
+
+  static {
+    // Without TCP_NODELAY the small answers wait for the delayed ACK of the client, about 40 ms
+    if (Objects.isNull(System.getProperty(NO_DELAY))) {
+      System.setProperty(NO_DELAY, "true");
+    }
+  }
+
+  private final ReportQueries queries;
+  private final int topCount;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  public ReportServer(ReportQueries queries, InetSocketAddress address, int threads,
+      int topCount) throws IOException {
+    this.queries = queries;
+    this.topCount = topCount;
+    this.server = HttpServer.create(address, 0);
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "server-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    route("/customer", "GET", this::customer);
+    route("/shop", "GET", this::shop);
+    route("/shops", "GET", this::shops);
+    route("/top", "GET", this::top);
+    route("/payments", "POST", this::payments);
+    server.start();
+  }
+
+  /**
+   * Loads the payments of the configured files and starts answering on the configured address.
+   */
+  public static ReportServer start(ReportConfig config, CustomerDirectory customers)
+      throws IOException {
+    ReportQueries.Loader loaded = ReportPipeline.readPayments(config, customers,
+        new ReportQueries.Loader(customers));
+    ReportServer server = new ReportServer(new ReportQueries(loaded),
+        new InetSocketAddress(config.getServerHost(), config.getServerPort()),
+        config.getServerThreads(), config.getTopCount());
+    log.info("Answering report queries on {}", server.getAddress());
+    return server;
+  }
+
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void route(String path, String method, Handler handler) {
+    Metrics.Timer timer = Metrics.timer("server" + path.replace('/', '.'));
+    server.createContext(path, exchange -> {
+      long start = timer.start();
+      try {
+        if (!exchange.getRequestMethod().equals(method)) {
+          respond(exchange, 405, Collections.singletonList("Use " + method));
+          return;
+        }
+        List<String> lines = handler.handle(parameters(exchange), exchange);
+        if (Objects.isNull(lines)) {
+          respond(exchange, 404, Collections.singletonList("Not found"));
+        } else {
+          respond(exchange, 200, lines);
+        }
+      } catch (IllegalArgumentException e) {
+        respond(exchange, 400, Collections.singletonList(e.getMessage()));
+      } catch (RuntimeException e) {
+        log.error("Error answering {}: {}", exchange.getRequestURI(), e.getMessage());
+        respond(exchange, 500, Collections.singletonList("Internal error"));
+      } finally {
+        exchange.close();
+        timer.stop(start);
+      }
+    });
+  }
+
+  private List<String> customer(Map<String, String> parameters, HttpExchange exchange) {
+    CustomerSum customerSum = queries.getCustomerSum(required(parameters, "shop"),
+        required(parameters, "customer"), date(parameters, "from"), date(parameters, "to"));
+    return Objects.isNull(customerSum) ? null :
+        Collections.singletonList(customerSum.getCSVLine());
+  }
+
+  private List<String> shop(Map<String, String> parameters, HttpExchange exchange) {
+    WebShopSum webShopSum = queries.getShopSum(required(parameters, "shop"),
+        date(parameters, "from"), date(parameters, "to"));
+    return Objects.isNull(webShopSum) ? null :
+        Collections.singletonList(webShopSum.getCSVLine());
+  }
+
+  private List<String> shops(Map<String, String> parameters, HttpExchange exchange) {
+    List<String> lines = new ArrayList<>();
+    for (WebShopSum webShopSum : queries.getShopSums(date(parameters, "from"),
+        date(parameters, "to"))) {
+      lines.add(webShopSum.getCSVLine());
+    }
+    return lines;
+  }
+
+  private List<String> top(Map<String, String> parameters, HttpExchange exchange) {
+    int count = topCount;
+    String n = parameters.get("n");
+    if (Objects.nonNull(n)) {
+      try {
+        count = Integer.parseInt(n);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("The n parameter must be a number: " + n);
+      }
+    }
+    if (count < 1) {
+      throw new IllegalArgumentException("The n parameter must be positive: " + count);
+    }
+    List<String> lines = new ArrayList<>();
+    for (CustomerSum customerSum : queries.getTopCustomers(count)) {
+      lines.add(customerSum.getCSVLine());
+    }
+    return lines;
+  }
+
+  private List<String> payments(Map<String, String> parameters, HttpExchange exchange)
+      throws IOException {
+    int accepted = 0;
+    int rejected = 0;
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+      for (String line = reader.readLine(); Objects.nonNull(line); line = reader.readLine()) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        Payment payment = CSVReaderUtil.parsePayment(line, queries.getCustomers());
+        if (Objects.isNull(payment)) {
+          rejected++;
+        } else {
+          queries.append(payment);
+          accepted++;
+        }
+      }
+    }
+    return Collections.singletonList(accepted + ";" + rejected);
+  }
+
+  private static Map<String, String> parameters(HttpExchange exchange) {
+    Map<String, String> parameters = new HashMap<>();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (Objects.isNull(query)) {
+      return parameters;
+    }
+    for (String parameter : query.split("&")) {
+      int equals = parameter.indexOf('=');
+      if (equals > 0) {
+        parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+            URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return parameters;
+  }
+
+  private static String required(Map<String, String> parameters, String name) {
+    String value = parameters.get(name);
+    if (Objects.isNull(value) || value.trim().isEmpty()) {
+      throw new IllegalArgumentException("The " + name + " parameter is missing");
+    }
+    return value;
+  }
+
+  private static LocalDate date(Map<String, String> parameters, String name) {
+    String value = parameters.get(name);
+    if (Objects.isNull(value) || value.trim().isEmpty()) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(value.trim(), DATE_FORMAT);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("The " + name + " parameter must be a yyyy.MM.dd date: " +
+          value);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, List<String> lines)
+      throws IOException {
+    StringBuilder body = new StringBuilder();
+    for (String line : lines) {
+      body.append(line).append('\n');
+    }
+    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(bytes);
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface Handler {
+    List<String> handle(Map<String, String> parameters, HttpExchange exchange)
+        throws IOException;
+  }
+}
@@ -0,0 +1,17 @@
+package otp.util;
+
+/**
+ * One report of a {@link ReportPipeline}: aggregates the shared payment stream in a single pass
+ * and writes its result once the stream is over.
+ */
+public interface ReportStage extends PaymentSink<ReportStage> {
+  /**
+   * Adds totals aggregated without going through the payment stream, by the incremental and
+   * the snapshot readers. Returns false if the report needs the payments themselves.
+   */
+  default boolean addTotals(PaymentAggregator totals) {
+    return false;
+  }
+
+  void write(String fileName);
+}
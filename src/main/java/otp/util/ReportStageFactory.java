@@ -0,0 +1,6 @@
+package otp.util;
+
+@FunctionalInterface
+public interface ReportStageFactory {
+  ReportStage create(CustomerDirectory customers, ReportConfig config);
+}
@@ -5,66 +5,111 @@ import org.apache.logging.log4j.Logger;
 import otp.model.Customer;
 import otp.model.CustomerSum;
 import otp.model.Payment;
-import otp.model.PaymentType;
 import otp.model.WebShopSum;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 public class ReportUtil {
+  public static final String CUSTOMER_REPORT_FILE = "src/reports/report01.csv";
+  public static final String TOP_CUSTOMERS_REPORT_FILE = "src/reports/top.csv";
+  public static final String WEB_SHOP_REPORT_FILE = "src/reports/report02.csv";
   private static final Logger log = LogManager.getLogger(ReportUtil.class);
 
   private ReportUtil() {
     throw new UnsupportedOperationException("This is a util class!");
   }
 
+  public static void createReports(PaymentAggregator aggregator, int numberOfCustomers) {
+    List<CustomerSum> customerSums = aggregator.getCustomerSums();
+    writeCustomerReport(customerSums);
+    reportTopNCustomers(customerSums, numberOfCustomers);
+    writeWebShopReport(aggregator.getShopSums());
+  }
+
+  public static void createReports(
+      DateRangeIndex index,
+      LocalDate from,
+      LocalDate to,
+      String customerFileName,
+      String webShopFileName
+  ) {
+    writeCustomerReport(sumByCustomer(index, from, to), customerFileName);
+    writeWebShopReport(sumByWebShop(index, from, to), webShopFileName);
+  }
+
+  public static List<CustomerSum> sumByCustomer(
+      DateRangeIndex index,
+      LocalDate from,
+      LocalDate to
+  ) {
+    return index.getCustomerSums(from, to);
+  }
+
+  public static List<WebShopSum> sumByWebShop(
+      DateRangeIndex index,
+      LocalDate from,
+      LocalDate to
+  ) {
+    return index.getShopSums(from, to);
+  }
+
   public static List<CustomerSum> sumByCustomerReport(
       List<Customer> customers,
       List<Payment> payments
   ) {
-    List<String> reportLines = new ArrayList<>();
-    List<CustomerSum> customerSums = calculateCustomerSums(customers, payments);
+    return sumByCustomerReport(new CustomerIndex(customers), payments);
+  }
 
-    for (CustomerSum customerSum : customerSums) {
-      reportLines.add(customerSum.getCSVLine());
-    }
+  public static List<CustomerSum> sumByCustomerReport(
+      CustomerIndex customers,
+      List<Payment> payments
+  ) {
+    List<CustomerSum> customerSums = aggregate(customers, payments).getCustomerSums();
+    writeCustomerReport(customerSums);
+    return customerSums;
+  }
 
-    try {
-      writeToFile(reportLines, "src/reports/report01.csv");
+  private static void writeCustomerReport(List<CustomerSum> customerSums) {
+    writeCustomerReport(customerSums, CUSTOMER_REPORT_FILE);
+  }
+
+  public static void writeCustomerReport(List<CustomerSum> customerSums, String fileName) {
+    try (ReportWriter writer = new ReportWriter(fileName)) {
+      for (CustomerSum customerSum : customerSums) {
+        writer.writeLine(customerSum.getCSVLine());
+      }
+      writer.commit();
     } catch (IOException e) {
       log.error("Error creating report summarizing customer's spending: {}", e.getMessage());
     }
-
-    return customerSums;
   }
 
   private static List<CustomerSum> calculateCustomerSums(
       List<Customer> customers,
       List<Payment> payments
   ) {
-    List<CustomerSum> customerSums = new ArrayList<>();
-    for (Customer customer : customers) {
-      BigDecimal sum = BigDecimal.ZERO;
-      for (Payment payment : payments) {
-        if (payment.getShopId().equals(customer.getShopId()) &&
-            payment.getCustomerId().equals(customer.getCustomerId())) {
-          sum = sum.add(payment.getAmount());
-        }
-      }
-      CustomerSum customerSum = new CustomerSum(customer.getName(), customer.getAddress(), sum);
-      customerSums.add(customerSum);
-    }
-    return customerSums;
+    return aggregate(new CustomerIndex(customers), payments).getCustomerSums(customers);
+  }
+
+  private static PaymentAggregator aggregate(CustomerIndex customers, List<Payment> payments) {
+    PaymentAggregator aggregator = new PaymentAggregator(customers);
+    aggregator.addAll(payments);
+    return aggregator;
   }
 
   public static void reportTopNCustomers(List<CustomerSum> customerSums, int numberOfCustomers) {
+    reportTopNCustomers(customerSums, numberOfCustomers, TOP_CUSTOMERS_REPORT_FILE);
+  }
+
+  public static void reportTopNCustomers(
+      List<CustomerSum> customerSums,
+      int numberOfCustomers,
+      String fileName
+  ) {
     if (customerSums.isEmpty()) {
       log.info("There's nothing to report, the list of sums is empty");
       return;
@@ -77,7 +122,7 @@ public class ReportUtil {
 
     List<String> reportLines = getTopLines(customerSums, numberOfCustomers);
     try {
-      writeToFile(reportLines, "src/reports/top.csv");
+      writeToFile(reportLines, fileName);
     } catch (IOException e) {
       log.error("Error creating report summarizing customer's spending: {}", e.getMessage());
     }
@@ -87,31 +132,56 @@ public class ReportUtil {
       List<CustomerSum> customerSums,
       Integer numberOfCustomers
   ) {
-    Collections.sort(customerSums, new Comparator<CustomerSum>() {
-      @Override
-      public int compare(CustomerSum u1, CustomerSum u2) {
-        return u2.getSum().compareTo(u1.getSum());
-      }
-    });
-
     List<String> reportLines = new ArrayList<>();
-    for (int i = 0; i < numberOfCustomers; i++) {
-      reportLines.add(customerSums.get(i).getCSVLine());
+    for (CustomerSum customerSum : selectTopCustomers(customerSums, numberOfCustomers)) {
+      reportLines.add(customerSum.getCSVLine());
     }
     return reportLines;
   }
 
+  public static List<CustomerSum> selectTopCustomers(
+      List<CustomerSum> customerSums,
+      int numberOfCustomers
+  ) {
+    CustomerSum[] sums = customerSums.toArray(new CustomerSum[0]);
+    TopNSelector<Integer> selector = new TopNSelector<>(numberOfCustomers, (i, j) -> {
+      int result = Long.compare(sums[j].getSumUnits(), sums[i].getSumUnits());
+      return result != 0 ? result : Integer.compare(i, j);
+    });
+    for (int i = 0; i < sums.length; i++) {
+      selector.offer(i);
+    }
+    List<CustomerSum> top = new ArrayList<>(selector.size());
+    for (Integer i : selector.getTop()) {
+      top.add(sums[i]);
+    }
+    return top;
+  }
+
   public static void reportByWebShop(
       List<Customer> customers,
       List<Payment> payments
   ) {
-    List<String> reportLines = new ArrayList<>();
-    for (WebShopSum webshopSum : calculateShopSums(customers, payments)) {
-      reportLines.add(webshopSum.getCSVLine());
-    }
+    reportByWebShop(new CustomerIndex(customers), payments);
+  }
 
-    try {
-      writeToFile(reportLines, "src/reports/report02.csv");
+  public static void reportByWebShop(
+      CustomerIndex customers,
+      List<Payment> payments
+  ) {
+    writeWebShopReport(aggregate(customers, payments).getShopSums());
+  }
+
+  private static void writeWebShopReport(List<WebShopSum> webShopSums) {
+    writeWebShopReport(webShopSums, WEB_SHOP_REPORT_FILE);
+  }
+
+  public static void writeWebShopReport(List<WebShopSum> webShopSums, String fileName) {
+    try (ReportWriter writer = new ReportWriter(fileName)) {
+      for (WebShopSum webshopSum : webShopSums) {
+        writer.writeLine(webshopSum.getCSVLine());
+      }
+      writer.commit();
     } catch (IOException e) {
       log.error("Error creating report summarizing webshops transactions: {}", e.getMessage());
     }
@@ -121,35 +191,27 @@ public class ReportUtil {
       List<Customer> customers,
       List<Payment> payments
   ) {
-    List<WebShopSum> webShopSums = new ArrayList<>();
     SortedSet<String> webshops = new TreeSet<>();
     for (Customer customer : customers) {
       webshops.add(customer.getShopId());
     }
+    return aggregate(new CustomerIndex(customers), payments).getShopSums(webshops);
+  }
 
-    for (String webshop : webshops) {
-      BigDecimal sumCards = BigDecimal.ZERO;
-      BigDecimal sumTransfers = BigDecimal.ZERO;
-      for (Payment payment : payments) {
-        if (payment.getShopId().equals(webshop)) {
-          if (payment.getType() == PaymentType.CARD) {
-            sumCards = sumCards.add(payment.getAmount());
-          } else {
-            sumTransfers = sumTransfers.add(payment.getAmount());
-          }
-        }
-      }
-      webShopSums.add(new WebShopSum(webshop, sumCards, sumTransfers));
+  public static void writeReport(List<String> reportLines, String fileName, String description) {
+    try {
+      writeToFile(reportLines, fileName);
+    } catch (IOException e) {
+      log.error("Error creating report summarizing {}: {}", description, e.getMessage());
     }
-    return webShopSums;
   }
 
   private static void writeToFile(List<String> lines, String fileName) throws IOException {
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, false))) {
+    try (ReportWriter writer = new ReportWriter(fileName)) {
       for (String line : lines) {
-        writer.append(line);
-        writer.append("\n");
+        writer.writeLine(line);
       }
+      writer.commit();
     }
   }
 }
@@ -0,0 +1,126 @@
+package otp.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes report lines as UTF-8 into a temp file next to the target, encoding them straight into
+ * a large buffer that goes to a {@link FileChannel}. The target is only replaced, atomically, by
+ * {@link #commit()}; closing the writer without committing drops the temp file, so a failed run
+ * leaves the previous report in place. Files ending in {@code .gz} are gzip compressed.
+ */
+public class ReportWriter implements Closeable {
+  public static final String GZIP_SUFFIX = ".gz";
+  static final int BUFFER_SIZE = 1 << 20;
+  private static final Metrics.Timer writeTimer = Metrics.timer("report.write");
+  private static final Metrics.Counter writtenLines = Metrics.counter("report.lines");
+
+  private final Path target;
+  private final Path temp;
+  private final FileChannel channel;
+  private final GZIPOutputStream gzip;
+  private final ByteBuffer buffer;
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final long start = writeTimer.start();
+  private long lines;
+  private boolean committed;
+
+  public ReportWriter(String fileName) throws IOException {
+    this.target = Paths.get(fileName);
+    this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+    this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    if (fileName.endsWith(GZIP_SUFFIX)) {
+      this.gzip = new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16);
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    } else {
+      this.gzip = null;
+      this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  }
+
+  public void writeLine(CharSequence line) throws IOException {
+    lines++;
+    int length = line.length();
+    int i = 0;
+    while (i < length) {
+      char c = line.charAt(i);
+      if (c >= 0x80) {
+        encode(CharBuffer.wrap(line, i, length));
+        break;
+      }
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.put((byte) c);
+      i++;
+    }
+    if (!buffer.hasRemaining()) {
+      flush();
+    }
+    buffer.put((byte) '\n');
+  }
+
+  private void encode(CharBuffer chars) throws IOException {
+    encoder.reset();
+    CoderResult result = encoder.encode(chars, buffer, true);
+    while (result.isOverflow()) {
+      flush();
+      result = encoder.encode(chars, buffer, true);
+    }
+    while (encoder.flush(buffer).isOverflow()) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    if (Objects.nonNull(gzip)) {
+      gzip.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    } else {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    buffer.clear();
+  }
+
+  public void commit() throws IOException {
+    flush();
+    if (Objects.nonNull(gzip)) {
+      gzip.finish();
+    }
+    channel.force(false);
+    channel.close();
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    committed = true;
+    writtenLines.add(lines);
+    writeTimer.stop(start);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!committed) {
+      channel.close();
+      Files.deleteIfExists(temp);
+    }
+  }
+}
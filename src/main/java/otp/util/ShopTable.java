@@ -0,0 +1,104 @@
+package otp.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The shop identifiers of a customer directory with their dense indices. Besides a {@link String}
+ * the index can be looked up straight from a field of a {@link FieldTokenizer}, so parsing a
+ * payment doesn't have to create the shop identifier first.
+ */
+class ShopTable {
+  private final List<String> shopIds = new ArrayList<>();
+  private int[] table = new int[16];
+  private int[] hashes = new int[8];
+
+  /**
+   * Returns the index of the shop, adding it if it's new.
+   */
+  int add(String shopId) {
+    int hash = shopId.hashCode();
+    int slot = find(hash, shopId);
+    if (table[slot] != 0) {
+      return table[slot] - 1;
+    }
+    int index = shopIds.size();
+    shopIds.add(shopId);
+    if (index == hashes.length) {
+      hashes = Arrays.copyOf(hashes, index * 2);
+    }
+    hashes[index] = hash;
+    table[slot] = index + 1;
+    if ((index + 1) * 2 > table.length) {
+      rehash();
+    }
+    return index;
+  }
+
+  int indexOf(String shopId) {
+    if (Objects.isNull(shopId)) {
+      return -1;
+    }
+    return table[find(shopId.hashCode(), shopId)] - 1;
+  }
+
+  int indexOf(FieldTokenizer fields, int index) {
+    int hash = fields.hash(index);
+    int mask = table.length - 1;
+    int slot = mix(hash) & mask;
+    while (table[slot] != 0) {
+      int shopIndex = table[slot] - 1;
+      if (hashes[shopIndex] == hash && fields.fieldEquals(index, shopIds.get(shopIndex))) {
+        return shopIndex;
+      }
+      slot = slot + 1 & mask;
+    }
+    return -1;
+  }
+
+  String get(int index) {
+    return shopIds.get(index);
+  }
+
+  int size() {
+    return shopIds.size();
+  }
+
+  SortedSet<String> sorted() {
+    return new TreeSet<>(shopIds);
+  }
+
+  private int find(int hash, String shopId) {
+    int mask = table.length - 1;
+    int slot = mix(hash) & mask;
+    while (table[slot] != 0) {
+      int shopIndex = table[slot] - 1;
+      if (hashes[shopIndex] == hash && shopIds.get(shopIndex).equals(shopId)) {
+        return slot;
+      }
+      slot = slot + 1 & mask;
+    }
+    return slot;
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    int mask = table.length - 1;
+    for (int index = 0; index < shopIds.size(); index++) {
+      int slot = mix(hashes[index]) & mask;
+      while (table[slot] != 0) {
+        slot = slot + 1 & mask;
+      }
+      table[slot] = index + 1;
+    }
+  }
+
+  static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ hash >>> 16;
+  }
+}
@@ -0,0 +1,405 @@
+package otp.util;
+
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sums payments per customer within a fixed memory budget. The totals are kept in a primitive
+ * hash table that grows while the budget allows; once it can't they are written to a run file
+ * sorted by customer index and the table starts over. {@link #forEachTotal(TotalConsumer)} then
+ * merges the runs and the table in one streaming k-way pass, so the totals of all the customers
+ * never have to be on the heap at once.
+ * <p>
+ * The partials of an aggregator take their tables from the same budget, and give them back once
+ * merged, so the budget holds however many partials the reader keeps. Only the small initial
+ * tables come on top of it. An aggregator can be {@link #share() shared} by several reports, the
+ * runs are deleted when the last of them closes it.
+ */
+public class SpillingCustomerAggregator implements Closeable {
+  private static final int SLOT_SIZE = 16;
+  private static final int MIN_SLOTS = 16;
+  private static final int MAX_FAN_IN = 64;
+  private static final int STREAM_BUFFER = 1 << 16;
+  private static final Metrics.Counter spilledRuns = Metrics.counter("spill.runs");
+  private static final Metrics.Counter spilledTotals = Metrics.counter("spill.totals");
+
+  private final CustomerDirectory customers;
+  private final AtomicLong available;
+  private final Path spillDirectory;
+  private final List<Path> runs = new ArrayList<>();
+  private int[] keys;
+  private long[] units;
+  private int[] scales;
+  private int mask;
+  private int size;
+  private long reserved;
+  private int users = 1;
+
+  public SpillingCustomerAggregator(CustomerDirectory customers, long memoryBudget,
+      Path spillDirectory) {
+    this(customers, budget(memoryBudget), spillDirectory);
+  }
+
+  private SpillingCustomerAggregator(CustomerDirectory customers, AtomicLong available,
+      Path spillDirectory) {
+    this.customers = customers;
+    this.available = available;
+    this.spillDirectory = spillDirectory;
+    allocate(MIN_SLOTS);
+  }
+
+  private static AtomicLong budget(long memoryBudget) {
+    if (memoryBudget < 1) {
+      throw new IllegalArgumentException("The memory budget must be positive: " + memoryBudget);
+    }
+    return new AtomicLong(memoryBudget);
+  }
+
+  /**
+   * Returns an empty aggregator taking its table from the same budget.
+   */
+  public SpillingCustomerAggregator newPartial() {
+    return new SpillingCustomerAggregator(customers, available, spillDirectory);
+  }
+
+  /**
+   * Adds a user of the aggregator, who has to {@link #close()} it too.
+   */
+  public synchronized SpillingCustomerAggregator share() {
+    users++;
+    return this;
+  }
+
+  public CustomerDirectory getCustomers() {
+    return customers;
+  }
+
+  public void add(Payment payment) {
+    int customerIndex = customers.indexOf(payment);
+    if (customerIndex >= 0) {
+      add(customerIndex, payment.getAmountUnits(), payment.getAmountScale());
+    }
+  }
+
+  public void add(int customerIndex, long units, int scale) {
+    int hash = customerIndex * 0x9E3779B9;
+    int slot = (hash ^ hash >>> 16) & mask;
+    while (keys[slot] != 0 && keys[slot] != customerIndex + 1) {
+      slot = slot + 1 & mask;
+    }
+    if (keys[slot] == 0) {
+      if (size == (mask + 1) / 2) {
+        if (!grow()) {
+          spill();
+        }
+        add(customerIndex, units, scale);
+        return;
+      }
+      keys[slot] = customerIndex + 1;
+      size++;
+    }
+    this.units[slot] = FixedPoint.add(this.units[slot], units);
+    if (scale > scales[slot]) {
+      scales[slot] = scale;
+    }
+  }
+
+  /**
+   * Takes over the runs and the totals of another partial, whose table goes back to the budget.
+   */
+  public void merge(SpillingCustomerAggregator other) {
+    runs.addAll(other.runs);
+    other.runs.clear();
+    for (int slot = 0; slot <= other.mask; slot++) {
+      if (other.keys[slot] != 0) {
+        add(other.keys[slot] - 1, other.units[slot], other.scales[slot]);
+      }
+    }
+    other.release();
+  }
+
+  public int getRunCount() {
+    return runs.size();
+  }
+
+  /**
+   * Returns the bytes of the table taken from the budget.
+   */
+  public long getReservedMemory() {
+    return reserved;
+  }
+
+  private void allocate(int slots) {
+    keys = new int[slots];
+    units = new long[slots];
+    scales = new int[slots];
+    mask = slots - 1;
+    size = 0;
+  }
+
+  /**
+   * Doubles the table if the budget has room for it.
+   */
+  private boolean grow() {
+    int slots = mask + 1;
+    long bytes = (long) slots * SLOT_SIZE;
+    if (slots >= 1 << 30 || !reserve(bytes)) {
+      return false;
+    }
+    reserved += bytes;
+    int[] oldKeys = keys;
+    long[] oldUnits = units;
+    int[] oldScales = scales;
+    allocate(2 * slots);
+    for (int slot = 0; slot < slots; slot++) {
+      if (oldKeys[slot] != 0) {
+        add(oldKeys[slot] - 1, oldUnits[slot], oldScales[slot]);
+      }
+    }
+    return true;
+  }
+
+  private boolean reserve(long bytes) {
+    long current;
+    do {
+      current = available.get();
+      if (current < bytes) {
+        return false;
+      }
+    } while (!available.compareAndSet(current, current - bytes));
+    return true;
+  }
+
+  private void release() {
+    available.addAndGet(reserved);
+    reserved = 0;
+    allocate(MIN_SLOTS);
+  }
+
+  private void spill() {
+    try {
+      Path run = Files.createTempFile(spillDirectory, "customers", ".run");
+      runs.add(run);
+      try (DataOutputStream output = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(run), STREAM_BUFFER))) {
+        for (int slot : sortedSlots()) {
+          output.writeInt(keys[slot] - 1);
+          output.writeLong(units[slot]);
+          output.writeInt(scales[slot]);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error spilling the customer totals", e);
+    }
+    spilledRuns.increment();
+    spilledTotals.add(size);
+    Arrays.fill(keys, 0);
+    Arrays.fill(units, 0);
+    Arrays.fill(scales, 0);
+    size = 0;
+  }
+
+  private int[] sortedSlots() {
+    long[] entries = new long[size];
+    int count = 0;
+    for (int slot = 0; slot <= mask; slot++) {
+      if (keys[slot] != 0) {
+        entries[count++] = (long) keys[slot] << 32 | slot;
+      }
+    }
+    Arrays.sort(entries);
+    int[] slots = new int[count];
+    for (int i = 0; i < count; i++) {
+      slots[i] = (int) entries[i];
+    }
+    return slots;
+  }
+
+  /**
+   * Hands the total of every customer of the directory to the consumer, in customer index order;
+   * customers without payments get a zero total.
+   */
+  public synchronized void forEachTotal(TotalConsumer consumer) throws IOException {
+    while (runs.size() > MAX_FAN_IN) {
+      mergeRuns(new ArrayList<>(runs.subList(0, MAX_FAN_IN)));
+    }
+    PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+    try {
+      for (Path run : runs) {
+        Cursor cursor = new RunCursor(run);
+        if (cursor.next()) {
+          cursors.add(cursor);
+        } else {
+          cursor.close();
+        }
+      }
+      Cursor memory = new MemoryCursor(sortedSlots());
+      if (memory.next()) {
+        cursors.add(memory);
+      }
+      int next = 0;
+      while (!cursors.isEmpty()) {
+        int index = cursors.peek().index;
+        long totalUnits = 0;
+        int totalScale = 0;
+        while (!cursors.isEmpty() && cursors.peek().index == index) {
+          Cursor cursor = cursors.poll();
+          totalUnits = FixedPoint.add(totalUnits, cursor.units);
+          totalScale = Math.max(totalScale, cursor.scale);
+          if (cursor.next()) {
+            cursors.add(cursor);
+          } else {
+            cursor.close();
+          }
+        }
+        for (; next < index; next++) {
+          consumer.accept(next, 0, 0);
+        }
+        consumer.accept(index, totalUnits, totalScale);
+        next = index + 1;
+      }
+      for (; next < customers.size(); next++) {
+        consumer.accept(next, 0, 0);
+      }
+    } finally {
+      for (Cursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+  }
+
+  private void mergeRuns(List<Path> group) throws IOException {
+    Path merged = Files.createTempFile(spillDirectory, "customers", ".run");
+    PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+    try (DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(merged), STREAM_BUFFER))) {
+      for (Path run : group) {
+        Cursor cursor = new RunCursor(run);
+        if (cursor.next()) {
+          cursors.add(cursor);
+        } else {
+          cursor.close();
+        }
+      }
+      while (!cursors.isEmpty()) {
+        Cursor cursor = cursors.poll();
+        output.writeInt(cursor.index);
+        output.writeLong(cursor.units);
+        output.writeInt(cursor.scale);
+        if (cursor.next()) {
+          cursors.add(cursor);
+        } else {
+          cursor.close();
+        }
+      }
+    } finally {
+      for (Cursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+    runs.removeAll(group);
+    runs.add(merged);
+    for (Path run : group) {
+      Files.deleteIfExists(run);
+    }
+  }
+
+  /**
+   * Deletes the run files and gives the table back to the budget, once the last user closed it.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (--users > 0) {
+      return;
+    }
+    release();
+    for (Path run : runs) {
+      Files.deleteIfExists(run);
+    }
+    runs.clear();
+  }
+
+  @FunctionalInterface
+  public interface TotalConsumer {
+    void accept(int customerIndex, long units, int scale) throws IOException;
+  }
+
+  private abstract static class Cursor implements Comparable<Cursor>, Closeable {
+    protected int index;
+    protected long units;
+    protected int scale;
+
+    protected abstract boolean next() throws IOException;
+
+    @Override
+    public int compareTo(Cursor other) {
+      return Integer.compare(index, other.index);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+
+  private static class RunCursor extends Cursor {
+    private final DataInputStream input;
+
+    private RunCursor(Path run) throws IOException {
+      input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run),
+          STREAM_BUFFER));
+    }
+
+    @Override
+    protected boolean next() throws IOException {
+      try {
+        index = input.readInt();
+      } catch (EOFException e) {
+        return false;
+      }
+      units = input.readLong();
+      scale = input.readInt();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      input.close();
+    }
+  }
+
+  private class MemoryCursor extends Cursor {
+    private final int[] slots;
+    private int position;
+
+    private MemoryCursor(int[] slots) {
+      this.slots = slots;
+    }
+
+    @Override
+    protected boolean next() {
+      if (position == slots.length) {
+        return false;
+      }
+      int slot = slots[position++];
+      index = keys[slot] - 1;
+      units = SpillingCustomerAggregator.this.units[slot];
+      scale = scales[slot];
+      return true;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package otp.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otp.model.CustomerSum;
+import otp.model.Payment;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Base of the customer reports computed by a {@link SpillingCustomerAggregator}, for customer
+ * bases whose totals don't fit in the heap. The reports are the same as the ones of
+ * {@link AggregatorReportStage}, written while the runs are merged. The reports of a pipeline
+ * {@link #share(ReportStage[]) share} one aggregator, so the totals are kept only once.
+ */
+public abstract class SpillingReportStage implements ReportStage {
+  private static final Logger log = LogManager.getLogger(SpillingReportStage.class);
+
+  protected final SpillingCustomerAggregator aggregator;
+  private final boolean fed;
+
+  /**
+   * Creates a stage adding the payments to the aggregator if {@code fed}, otherwise only reading
+   * the totals another stage added.
+   */
+  protected SpillingReportStage(SpillingCustomerAggregator aggregator, boolean fed) {
+    this.aggregator = aggregator;
+    this.fed = fed;
+  }
+
+  /**
+   * Lets the spilling stages read the aggregator of the first one of them, which alone is fed.
+   */
+  static void share(ReportStage[] stages) {
+    SpillingReportStage owner = null;
+    for (int i = 0; i < stages.length; i++) {
+      if (stages[i] instanceof SpillingReportStage) {
+        SpillingReportStage stage = (SpillingReportStage) stages[i];
+        if (Objects.isNull(owner)) {
+          owner = stage;
+        } else {
+          stages[i] = stage.reading(owner.aggregator.share());
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the same report reading the totals of the aggregator without feeding it.
+   */
+  protected abstract SpillingReportStage reading(SpillingCustomerAggregator aggregator);
+
+  @Override
+  public void accept(Payment payment) {
+    if (fed) {
+      aggregator.add(payment);
+    }
+  }
+
+  @Override
+  public void merge(ReportStage other) {
+    if (fed) {
+      aggregator.merge(((SpillingReportStage) other).aggregator);
+    }
+  }
+
+  @Override
+  public boolean addTotals(PaymentAggregator totals) {
+    if (!fed) {
+      return true;
+    }
+    AmountTotals customerTotals = totals.getCustomerTotals();
+    for (int i = 0; i < aggregator.getCustomers().size(); i++) {
+      if (customerTotals.getUnits(i) != 0 || customerTotals.getScale(i) != 0) {
+        aggregator.add(i, customerTotals.getUnits(i), customerTotals.getScale(i));
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void write(String fileName) {
+    try {
+      write(fileName, aggregator.getCustomers());
+    } catch (IOException | UncheckedIOException e) {
+      log.error("Error creating report summarizing customer's spending: {}", e.getMessage());
+    } finally {
+      try {
+        aggregator.close();
+      } catch (IOException e) {
+        log.error("Error deleting the spilled customer totals: {}", e.getMessage());
+      }
+    }
+  }
+
+  protected abstract void write(String fileName, CustomerDirectory customers) throws IOException;
+
+  public static class Customers extends SpillingReportStage {
+    public Customers(CustomerDirectory customers, long memoryBudget, Path spillDirectory) {
+      this(new SpillingCustomerAggregator(customers, memoryBudget, spillDirectory), true);
+    }
+
+    private Customers(SpillingCustomerAggregator aggregator, boolean fed) {
+      super(aggregator, fed);
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new Customers(aggregator.newPartial(), true);
+    }
+
+    @Override
+    protected SpillingReportStage reading(SpillingCustomerAggregator aggregator) {
+      return new Customers(aggregator, false);
+    }
+
+    @Override
+    protected void write(String fileName, CustomerDirectory customers) throws IOException {
+      try (ReportWriter writer = new ReportWriter(fileName)) {
+        aggregator.forEachTotal((index, units, scale) -> writer.writeLine(new CustomerSum(
+            customers.getName(index), customers.getAddress(index), units, scale).getCSVLine()));
+        writer.commit();
+      }
+    }
+  }
+
+  public static class TopCustomers extends SpillingReportStage {
+    private final int numberOfCustomers;
+
+    public TopCustomers(CustomerDirectory customers, int numberOfCustomers, long memoryBudget,
+        Path spillDirectory) {
+      this(new SpillingCustomerAggregator(customers, memoryBudget, spillDirectory), true,
+          numberOfCustomers);
+    }
+
+    private TopCustomers(SpillingCustomerAggregator aggregator, boolean fed,
+        int numberOfCustomers) {
+      super(aggregator, fed);
+      this.numberOfCustomers = numberOfCustomers;
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new TopCustomers(aggregator.newPartial(), true, numberOfCustomers);
+    }
+
+    @Override
+    protected SpillingReportStage reading(SpillingCustomerAggregator aggregator) {
+      return new TopCustomers(aggregator, false, numberOfCustomers);
+    }
+
+    @Override
+    protected void write(String fileName, CustomerDirectory customers) throws IOException {
+      if (customers.size() == 0) {
+        log.info("There's nothing to report, the list of sums is empty");
+        return;
+      }
+      if (numberOfCustomers < 1) {
+        log.info("There's nothing to report, the number of top users is: {}", numberOfCustomers);
+        return;
+      }
+      TopNSelector<RankedTotal> selector = new TopNSelector<>(numberOfCustomers, (i, j) -> {
+        int result = Long.compare(j.units, i.units);
+        return result != 0 ? result : Integer.compare(i.index, j.index);
+      });
+      aggregator.forEachTotal((index, units, scale) ->
+          selector.offer(new RankedTotal(index, units, scale)));
+      List<String> lines = new ArrayList<>(selector.size());
+      for (RankedTotal total : selector.getTop()) {
+        lines.add(new CustomerSum(customers.getName(total.index),
+            customers.getAddress(total.index), total.units, total.scale).getCSVLine());
+      }
+      ReportUtil.writeReport(lines, fileName, "customer's spending");
+    }
+  }
+
+  private static class RankedTotal {
+    private final int index;
+    private final long units;
+    private final int scale;
+
+    private RankedTotal(int index, long units, int scale) {
+      this.index = index;
+      this.units = units;
+      this.scale = scale;
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package otp.util;
+
+import otp.model.Payment;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Reads a payments file as concurrent stages connected by queues: one task reads newline aligned
+ * blocks of the file, several tasks parse and validate them, and the calling thread hands the
+ * payments to the consumer in file order, so the results are the ones of the sequential
+ * {@link CSVReaderUtil#readPayments} path. The blocks come from a bounded pool and only go back
+ * to it once consumed, so a slow stage holds the reader back instead of filling the heap. The
+ * stages run on virtual threads when the runtime has them, on platform threads otherwise.
+ */
+public class StagedPaymentReader {
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+  private static final AtomicInteger threadCount = new AtomicInteger();
+  private static final Metrics.Timer readTimer = Metrics.timer("stage.read");
+  private static final Metrics.Timer readWaitTimer = Metrics.timer("stage.read.wait");
+  private static final Metrics.Timer parseTimer = Metrics.timer("stage.parse");
+  private static final Metrics.Timer consumeTimer = Metrics.timer("stage.consume");
+  private static final Metrics.Counter blockCount = Metrics.counter("stage.blocks");
+
+  private final int parsers;
+  private final int blockSize;
+  private final int blocks;
+
+  public StagedPaymentReader(int parsers) {
+    this(parsers, DEFAULT_BLOCK_SIZE, 2 * parsers + 2);
+  }
+
+  public StagedPaymentReader(int parsers, int blockSize, int blocks) {
+    if (parsers < 1) {
+      throw new IllegalArgumentException("The number of parsers must be positive: " + parsers);
+    }
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("The block size must be positive: " + blockSize);
+    }
+    if (blocks < 1) {
+      throw new IllegalArgumentException("The number of blocks must be positive: " + blocks);
+    }
+    this.parsers = parsers;
+    this.blockSize = blockSize;
+    this.blocks = blocks;
+  }
+
+  /**
+   * An executor for short lived pipeline tasks: one virtual thread per task on runtimes that
+   * have them, a fixed pool of daemon threads otherwise.
+   */
+  public static ExecutorService newExecutor(int threads) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(threads, runnable -> {
+        Thread thread = new Thread(runnable, "stage-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Reads the payments of the file. A read error is thrown as an {@link UncheckedIOException},
+   * like an interrupt, which then stays set on the calling thread.
+   */
+  public void readPayments(String fileName, CustomerDirectory customers,
+      Consumer<Payment> consumer) {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      readPayments(channel, customers, consumer);
+    } catch (InterruptedIOException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException("Interrupted while reading file " + fileName, e);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error reading file " + fileName, e);
+    }
+  }
+
+  /**
+   * Reads the payments of any channel, e.g. a decompressing one, whose reading then overlaps
+   * the parsing. The errors of the stages are thrown to the caller.
+   */
+  public void readPayments(ReadableByteChannel channel, CustomerDirectory customers,
+      Consumer<Payment> consumer) throws IOException {
+    BlockingQueue<Block> free = new ArrayBlockingQueue<>(blocks);
+    for (int i = 0; i < blocks; i++) {
+      free.add(new Block());
+    }
+    // Every block is taken from the pool first, so these queues can't outgrow it
+    BlockingQueue<Block> read = new ArrayBlockingQueue<>(blocks + parsers);
+    BlockingQueue<Block> parsed = new LinkedBlockingQueue<>();
+    ExecutorService executor = newExecutor(parsers + 1);
+    try {
+      submit(executor, parsed, () -> readBlocks(channel, free, read));
+      for (int i = 0; i < parsers; i++) {
+        submit(executor, parsed, () -> parseBlocks(customers, read, parsed));
+      }
+      consumeBlocks(parsed, free, consumer);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading the payments");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void submit(ExecutorService executor, BlockingQueue<Block> parsed, Stage stage) {
+    executor.execute(() -> {
+      try {
+        stage.run();
+      } catch (InterruptedException e) {
+        // the pipeline was cancelled
+      } catch (Throwable e) {
+        parsed.add(Block.failed(e));
+      }
+    });
+  }
+
+  private void readBlocks(ReadableByteChannel channel, BlockingQueue<Block> free,
+      BlockingQueue<Block> read) throws IOException, InterruptedException {
+    byte[] carry = new byte[0];
+    long sequence = 0;
+    boolean end = false;
+    while (!end) {
+      long waitStart = readWaitTimer.start();
+      Block block = free.take();
+      readWaitTimer.stop(waitStart);
+      long start = readTimer.start();
+      ByteBuffer buffer = block.buffer;
+      if (Objects.isNull(buffer) || buffer.capacity() <= carry.length) {
+        buffer = ByteBuffer.allocateDirect(Math.max(blockSize, 2 * carry.length));
+      }
+      buffer.clear();
+      buffer.put(carry);
+      int lineEnd;
+      do {
+        if (!buffer.hasRemaining()) {
+          buffer = grow(buffer);
+        }
+        end = fill(channel, buffer);
+        lineEnd = end ? buffer.position() : lastLineEnd(buffer);
+      } while (lineEnd == 0 && !end);
+      carry = new byte[buffer.position() - lineEnd];
+      buffer.position(lineEnd);
+      buffer.get(carry);
+
+      block.buffer = buffer;
+      block.length = lineEnd;
+      block.sequence = sequence++;
+      read.put(block);
+      blockCount.increment();
+      readTimer.stop(start);
+    }
+    for (int i = 0; i < parsers; i++) {
+      read.put(Block.END);
+    }
+  }
+
+  private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int lastLineEnd(ByteBuffer buffer) {
+    for (int i = buffer.position() - 1; i >= 0; i--) {
+      if (buffer.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer) {
+    ByteBuffer grown = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+    buffer.flip();
+    grown.put(buffer);
+    return grown;
+  }
+
+  private static void parseBlocks(CustomerDirectory customers, BlockingQueue<Block> read,
+      BlockingQueue<Block> parsed) throws InterruptedException {
+    for (Block block = read.take(); block != Block.END; block = read.take()) {
+      long start = parseTimer.start();
+      List<Payment> payments = new ArrayList<>();
+      CSVReaderUtil.readPayments(block.buffer, 0, block.length, customers, payments::add);
+      block.payments = payments;
+      parsed.put(block);
+      parseTimer.stop(start);
+    }
+    parsed.put(Block.END);
+  }
+
+  private void consumeBlocks(BlockingQueue<Block> parsed, BlockingQueue<Block> free,
+      Consumer<Payment> consumer) throws IOException, InterruptedException {
+    Map<Long, Block> pending = new HashMap<>();
+    long next = 0;
+    int running = parsers;
+    while (running > 0) {
+      Block block = parsed.take();
+      if (Objects.nonNull(block.failure)) {
+        rethrow(block.failure);
+      }
+      if (block == Block.END) {
+        running--;
+        continue;
+      }
+      pending.put(block.sequence, block);
+      for (Block ready = pending.remove(next); Objects.nonNull(ready);
+          ready = pending.remove(next)) {
+        long start = consumeTimer.start();
+        for (Payment payment : ready.payments) {
+          consumer.accept(payment);
+        }
+        consumeTimer.stop(start);
+        ready.payments = null;
+        free.put(ready);
+        next++;
+      }
+    }
+  }
+
+  private static void rethrow(Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IllegalStateException(failure);
+  }
+
+  private interface Stage {
+    void run() throws IOException, InterruptedException;
+  }
+
+  /**
+   * A newline aligned block of the file, later with its parsed payments. The pool recycles the
+   * buffers, which only grow for lines longer than the block size.
+   */
+  private static class Block {
+    private static final Block END = new Block();
+
+    private ByteBuffer buffer;
+    private int length;
+    private long sequence;
+    private List<Payment> payments;
+    private Throwable failure;
+
+    private static Block failed(Throwable failure) {
+      Block block = new Block();
+      block.failure = failure;
+      return block;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package otp.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best {@code limit} items seen so far in a bounded min-heap, O(n log k) overall.
+ * The order must be total (break ties in it) for the result to be deterministic.
+ *
+ * <p>{@link #update(Object)} and {@link #lower(Object)} re-rank an item whose rank changed since
+ * it was offered. A rank that went down can't be followed exactly: once an item of the
+ * selection falls to its last place, one that dropped out before may rank higher now. The selection is then no longer
+ * {@link #isExact() exact} until it's {@link #clear() cleared} and all the items offered again.
+ */
+public class TopNSelector<T> {
+  private final int limit;
+  private final Comparator<? super T> order;
+  private final PriorityQueue<T> heap;
+  private boolean dropped;
+  private boolean exact = true;
+
+  public TopNSelector(int limit, Comparator<? super T> order) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("The number of items to select must be positive");
+    }
+    this.limit = limit;
+    this.order = order;
+    this.heap = new PriorityQueue<>(limit, order.reversed());
+  }
+
+  /**
+   * Offers an item not in the selection, returning the item that is left out of it: the
+   * offered one, the one it replaced, or null if the selection isn't full yet.
+   */
+  public T offer(T item) {
+    if (heap.size() < limit) {
+      heap.add(item);
+      return null;
+    }
+    dropped = true;
+    if (order.compare(item, heap.peek()) < 0) {
+      T last = heap.poll();
+      heap.add(item);
+      return last;
+    }
+    return item;
+  }
+
+  /**
+   * Re-ranks an item that may be in the selection after its rank went up, returning the item
+   * left out like {@link #offer(Object)}.
+   */
+  public T update(T item) {
+    if (!heap.remove(item)) {
+      return offer(item);
+    }
+    heap.add(item);
+    return null;
+  }
+
+  /**
+   * Re-ranks an item that may be in the selection after its rank went down, returning the item
+   * left out like {@link #offer(Object)}.
+   */
+  public T lower(T item) {
+    if (!heap.remove(item)) {
+      return offer(item);
+    }
+    heap.add(item);
+    if (dropped && heap.size() == limit && order.compare(item, heap.peek()) == 0) {
+      exact = false;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the last item of the selection, or null if it's empty.
+   */
+  public T last() {
+    return heap.peek();
+  }
+
+  public boolean isExact() {
+    return exact;
+  }
+
+  public void clear() {
+    heap.clear();
+    dropped = false;
+    exact = true;
+  }
+
+  public int size() {
+    return heap.size();
+  }
+
+  public List<T> getTop() {
+    List<T> top = new ArrayList<>(heap);
+    top.sort(order);
+    return top;
+  }
+}
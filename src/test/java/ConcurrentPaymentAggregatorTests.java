@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import otp.model.CustomerSum;
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import otp.model.WebShopSum;
+import otp.util.AmountTotal;
+import otp.util.CSVReaderUtil;
+import otp.util.ConcurrentPaymentAggregator;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import otp.util.ReportUtil;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class ConcurrentPaymentAggregatorTests {
+  private static final int PRODUCERS = 8;
+  private static final int ROUNDS = 2000;
+
+  @Test
+  void testConcurrentProducersMatchSequentialSums() throws InterruptedException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    List<Payment> payments = CSVReaderUtil.readPayments(customers);
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    for (int i = 0; i < PRODUCERS * ROUNDS; i++) {
+      expected.addAll(payments);
+    }
+
+    ConcurrentPaymentAggregator aggregator = new ConcurrentPaymentAggregator(customers, 4);
+    List<Thread> producers = new ArrayList<>();
+    for (int i = 0; i < PRODUCERS; i++) {
+      producers.add(new Thread(() -> {
+        for (int round = 0; round < ROUNDS; round++) {
+          payments.forEach(aggregator);
+        }
+      }));
+    }
+    producers.forEach(Thread::start);
+    while (producers.get(0).isAlive()) {
+      PaymentAggregator snapshot = aggregator.snapshot();
+      assertEquals(total(snapshot.getCustomerSums()), shopTotal(snapshot.getShopSums()));
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    assertEquals(expected.getCustomerSums(), aggregator.getCustomerSums());
+    assertEquals(expected.getShopSums(), aggregator.getShopSums());
+    assertEquals(ReportUtil.selectTopCustomers(expected.getCustomerSums(), 2),
+        aggregator.getTopCustomers(2));
+  }
+
+  @Test
+  void testTopCustomersFollowRefunds() {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    List<Payment> payments = CSVReaderUtil.readPayments(customers);
+    ConcurrentPaymentAggregator aggregator = new ConcurrentPaymentAggregator(customers, 2);
+    Random random = new Random(11);
+    for (int step = 0; step < 2000; step++) {
+      Payment payment = payments.get(random.nextInt(payments.size()));
+      Payment refund = new Payment();
+      refund.setCustomer(customers, customers.indexOf(payment));
+      refund.setType(payment.getType());
+      refund.setAmount(random.nextBoolean() ? payment.getAmountUnits() :
+          -2 * payment.getAmountUnits(), payment.getAmountScale());
+      aggregator.add(refund);
+
+      List<CustomerSum> customerSums = aggregator.getCustomerSums();
+      for (int n = 1; n <= 4; n++) {
+        assertEquals(ReportUtil.selectTopCustomers(customerSums, n),
+            aggregator.getTopCustomers(n));
+      }
+    }
+  }
+
+  @Test
+  void testConcurrentQueriesSeeFittingScales() throws InterruptedException {
+    CustomerIndex customers = new CustomerIndex();
+    for (int i = 0; i < 20000; i++) {
+      customers.add("WS01", "C" + i, "Name " + i, "Address " + i);
+    }
+    ConcurrentPaymentAggregator aggregator = new ConcurrentPaymentAggregator(customers, 4);
+    List<Thread> producers = new ArrayList<>();
+    for (int scale = 0; scale <= FixedPoint.SCALE; scale++) {
+      long units = FixedPoint.powerOfTen(FixedPoint.SCALE - scale);
+      int amountScale = scale;
+      producers.add(new Thread(() -> {
+        for (int i = 0; i < customers.size(); i++) {
+          Payment payment = new Payment();
+          payment.setCustomer(customers, i);
+          payment.setType(PaymentType.CARD);
+          payment.setAmount(units, amountScale);
+          aggregator.add(payment);
+        }
+      }));
+    }
+    producers.forEach(Thread::start);
+    while (producers.stream().anyMatch(Thread::isAlive)) {
+      for (int i = 0; i < customers.size(); i += 7) {
+        AmountTotal total = aggregator.getCustomerTotal(i);
+        FixedPoint.toBigDecimal(total.getUnits(), total.getScale());
+      }
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    AmountTotal total = aggregator.getCustomerTotal(0);
+    assertEquals(new BigDecimal("1.1111"),
+        FixedPoint.toBigDecimal(total.getUnits(), total.getScale()));
+  }
+
+  private long total(List<CustomerSum> customerSums) {
+    long total = 0;
+    for (CustomerSum customerSum : customerSums) {
+      total += customerSum.getSumUnits();
+    }
+    return total;
+  }
+
+  private long shopTotal(List<WebShopSum> webShopSums) {
+    long total = 0;
+    for (WebShopSum webShopSum : webShopSums) {
+      total += webShopSum.getCardSumUnits() + webShopSum.getTransferSumUnits();
+    }
+    return total;
+  }
+}
@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import otp.model.Customer;
+import otp.model.CustomerSum;
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import otp.model.WebShopSum;
+import otp.util.CustomerIndex;
+import otp.util.DateRangeAggregator;
+import otp.util.DateRangeIndex;
+import otp.util.PaymentAggregator;
+import otp.util.ReportUtil;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class DateRangeIndexTests {
+  private static final LocalDate FIRST_DAY = LocalDate.of(2021, 1, 1);
+
+  @Test
+  void testRangeTotalsMatchFilteredAggregation() {
+    Random random = new Random(42);
+    List<Customer> customerList = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Customer customer = new Customer();
+      customer.setShopId("WS0" + i % 3);
+      customer.setCustomerId("A" + i);
+      customer.setName("Customer " + i);
+      customer.setAddress("Address " + i);
+      customerList.add(customer);
+    }
+    CustomerIndex customers = new CustomerIndex(customerList);
+    List<Payment> payments = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      Payment payment = new Payment();
+      payment.setShopId("WS0" + random.nextInt(3));
+      payment.setCustomerId("A" + random.nextInt(22));
+      payment.setType(random.nextBoolean() ? PaymentType.CARD : PaymentType.TRANSFER);
+      int scale = random.nextInt(3);
+      payment.setAmount(random.nextInt(100000) * FixedPoint.powerOfTen(FixedPoint.SCALE - scale),
+          scale);
+      payment.setPaymentDate(FIRST_DAY.plusDays(random.nextInt(60)));
+      payments.add(payment);
+    }
+
+    DateRangeAggregator first = new DateRangeAggregator(customers);
+    DateRangeAggregator second = first.newPartial();
+    first.addAll(payments.subList(0, 700));
+    second.addAll(payments.subList(700, payments.size()));
+    first.merge(second);
+    DateRangeIndex index = first.getIndex();
+
+    for (int i = 0; i < 200; i++) {
+      LocalDate from = i % 10 == 0 ? null : FIRST_DAY.plusDays(random.nextInt(70) - 5);
+      LocalDate to = i % 10 == 1 ? null : FIRST_DAY.plusDays(random.nextInt(70) - 5);
+      PaymentAggregator expected = new PaymentAggregator(customers);
+      for (Payment payment : payments) {
+        LocalDate date = payment.getPaymentDate();
+        if ((from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to))) {
+          expected.add(payment);
+        }
+      }
+      assertEquals(customerLines(expected.getCustomerSums()),
+          customerLines(ReportUtil.sumByCustomer(index, from, to)));
+      assertEquals(shopLines(expected.getShopSums()),
+          shopLines(ReportUtil.sumByWebShop(index, from, to)));
+    }
+  }
+
+  private static List<String> customerLines(List<CustomerSum> customerSums) {
+    List<String> lines = new ArrayList<>();
+    for (CustomerSum customerSum : customerSums) {
+      lines.add(customerSum.getCSVLine());
+    }
+    return lines;
+  }
+
+  private static List<String> shopLines(List<WebShopSum> webShopSums) {
+    List<String> lines = new ArrayList<>();
+    for (WebShopSum webShopSum : webShopSums) {
+      lines.add(webShopSum.getCSVLine());
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import otp.model.Customer;
+import otp.model.FixedPoint;
+import otp.model.Payment;
+import otp.util.AmountTotal;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerDirectory;
+import otp.util.CustomerIndex;
+import otp.util.FieldTokenizer;
+import otp.util.LineTokenizer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+
+class FixedPointTests {
+  @Test
+  void testTotalsMatchBigDecimalArithmetic() {
+    String[] amounts = {"2199", "0.5", "12.30", "-3.1", "1E+3", "7.0000", "0"};
+    BigDecimal expected = BigDecimal.ZERO;
+    AmountTotal total = new AmountTotal();
+    for (String amount : amounts) {
+      BigDecimal value = new BigDecimal(amount);
+      expected = expected.add(value);
+      total.add(FixedPoint.toUnits(value), FixedPoint.scaleOf(value));
+      assertEquals(expected, FixedPoint.toBigDecimal(total.getUnits(), total.getScale()));
+    }
+  }
+
+  @Test
+  void testOverflowIsDetected() {
+    AmountTotal total = new AmountTotal();
+    total.add(Long.MAX_VALUE, 0);
+    assertThrows(ArithmeticException.class, () -> total.add(1, 0));
+  }
+
+  @Test
+  void testModelRoundsExtraDecimals() {
+    Payment payment = new Payment();
+    payment.setAmount(new BigDecimal("1.23456"));
+    assertEquals(new BigDecimal("1.2346"), payment.getAmount());
+    payment.setAmount(new BigDecimal("1.234500"));
+    assertEquals(new BigDecimal("1.234500"), payment.getAmount());
+    assertFalse(FixedPoint.fits(new BigDecimal("1.23456")));
+    assertTrue(FixedPoint.fits(new BigDecimal("1.234500")));
+  }
+
+  @Test
+  void testParsedAmounts()
+      throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+    assertEquals(new BigDecimal("12.5"), parse("12.5").getAmount());
+    assertEquals(new BigDecimal("-0.75"), parse("-0.75").getAmount());
+    assertEquals(new BigDecimal("12.30000"), parse("12.30000").getAmount());
+    assertEquals(new BigDecimal("1000"), parse("1E+3").getAmount());
+    assertNull(parse("1.23456"));
+    assertNull(parse("99999999999999999999"));
+    assertNull(parse("12,5"));
+  }
+
+  private Payment parse(String amount)
+      throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+    Customer customer = new Customer();
+    customer.setShopId("WS01");
+    customer.setCustomerId("A01");
+    CustomerIndex customers = new CustomerIndex();
+    customers.add(customer);
+    LineTokenizer fields = new LineTokenizer(';');
+    fields.reset("WS01;A01;card;" + amount + ";;4908366099900433;2021.01.01");
+    return (Payment) getParsePaymentMethod().invoke(null, fields, customers);
+  }
+
+  private Method getParsePaymentMethod() throws NoSuchMethodException {
+    Method method = CSVReaderUtil.class.getDeclaredMethod(
+        "parsePayment",
+        FieldTokenizer.class,
+        CustomerDirectory.class
+    );
+    method.setAccessible(true);
+    return method;
+  }
+}
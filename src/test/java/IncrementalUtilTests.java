@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.IncrementalUtil;
+import otp.util.PaymentAggregator;
+import otp.util.ReportConfig;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+class IncrementalUtilTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testAppendedPaymentsAreAddedToTheSavedState() throws IOException {
+    Path customerFile = directory.resolve("customer.csv");
+    Path paymentFile = directory.resolve("payments.csv");
+    Path stateFile = directory.resolve("aggregates.state");
+    Files.copy(Paths.get(CSVReaderUtil.CUSTOMERS_FILE), customerFile);
+    List<String> paymentLines =
+        Files.readAllLines(Paths.get(CSVReaderUtil.PAYMENTS_FILE), StandardCharsets.UTF_8);
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex(customerFile.toString());
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < paymentLines.size(); i++) {
+      content.append(paymentLines.get(i)).append('\n');
+      if (i % 4 == 3) {
+        String text = content.toString();
+        int half = text.length() / 2;
+        append(paymentFile, text.substring(0, half));
+        aggregate(customerFile, customers, paymentFile, stateFile);
+        append(paymentFile, text.substring(half));
+        content.setLength(0);
+      }
+    }
+    append(paymentFile, content.toString());
+
+    PaymentAggregator incremental = aggregate(customerFile, customers, paymentFile, stateFile);
+    PaymentAggregator full = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(paymentFile.toString(), customers, full::add);
+    assertEquals(full.getCustomerSums(), incremental.getCustomerSums());
+    assertEquals(full.getShopSums(), incremental.getShopSums());
+
+    PaymentAggregator again = aggregate(customerFile, customers, paymentFile, stateFile);
+    assertEquals(full.getCustomerSums(), again.getCustomerSums());
+  }
+
+  @Test
+  void testRewrittenPaymentsAreReadAgain() throws IOException {
+    Path customerFile = directory.resolve("customer.csv");
+    Path paymentFile = directory.resolve("payments.csv");
+    Path stateFile = directory.resolve("aggregates.state");
+    Files.copy(Paths.get(CSVReaderUtil.CUSTOMERS_FILE), customerFile);
+    Files.copy(Paths.get(CSVReaderUtil.PAYMENTS_FILE), paymentFile);
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex(customerFile.toString());
+    aggregate(customerFile, customers, paymentFile, stateFile);
+
+    Files.write(paymentFile, "WS01;A01;card;100;;4908366099900433;2021.01.01\n"
+        .getBytes(StandardCharsets.UTF_8));
+    PaymentAggregator incremental = aggregate(customerFile, customers, paymentFile, stateFile);
+    PaymentAggregator full = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(paymentFile.toString(), customers, full::add);
+    assertEquals(full.getCustomerSums(), incremental.getCustomerSums());
+  }
+
+  @Test
+  void testChangedShopsAreReadAgain() throws IOException {
+    Path customerFile = directory.resolve("customer.csv");
+    Path paymentFile = directory.resolve("payments.csv");
+    Path stateFile = directory.resolve("aggregates.state");
+    Files.copy(Paths.get(CSVReaderUtil.CUSTOMERS_FILE), customerFile);
+    Files.copy(Paths.get(CSVReaderUtil.PAYMENTS_FILE), paymentFile);
+    aggregate(customerFile, CSVReaderUtil.readCustomers(customerFile.toString(),
+        new CustomerIndex(), Set.of("WS01")), paymentFile, stateFile);
+
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex(customerFile.toString());
+    PaymentAggregator incremental = aggregate(customerFile, customers, paymentFile, stateFile);
+    PaymentAggregator full = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(paymentFile.toString(), customers, full::add);
+    assertEquals(full.getCustomerSums(), incremental.getCustomerSums());
+    assertEquals(full.getShopSums(), incremental.getShopSums());
+  }
+
+  @Test
+  void testMultiFilePaymentsAreRejected() {
+    ReportConfig config = ReportConfig.fromArgs("--" + ReportConfig.MODE_INCREMENTAL,
+        "--" + ReportConfig.PAYMENTS_FILE + "=" + directory);
+    assertThrows(IllegalArgumentException.class, config::getMode);
+    config.setProperty(ReportConfig.PAYMENTS_FILE, directory.resolve("*.csv").toString());
+    assertThrows(IllegalArgumentException.class, config::getMode);
+  }
+
+  @Test
+  void testFailedReadKeepsTheState() {
+    Path stateFile = directory.resolve("aggregates.state");
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    assertThrows(UncheckedIOException.class, () -> IncrementalUtil.aggregate(
+        CSVReaderUtil.CUSTOMERS_FILE, customers, directory.resolve("missing.csv").toString(),
+        stateFile.toString(), 2));
+    assertFalse(Files.exists(stateFile));
+  }
+
+  private PaymentAggregator aggregate(Path customerFile, CustomerIndex customers,
+      Path paymentFile, Path stateFile) {
+    return IncrementalUtil.aggregate(customerFile.toString(), customers, paymentFile.toString(),
+        stateFile.toString(), 2);
+  }
+
+  private void append(Path file, String text) throws IOException {
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+}
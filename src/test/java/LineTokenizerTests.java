@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import otp.util.ByteLineTokenizer;
+import otp.util.CustomerDirectory;
+import otp.util.CustomerIndex;
+import otp.util.FieldTokenizer;
+import otp.util.LineTokenizer;
+import otp.util.OffHeapCustomerDirectory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class LineTokenizerTests {
+  private final LineTokenizer fields = new LineTokenizer(';');
+
+  @Test
+  void testFieldsMatchSplit() {
+    String[] lines = {
+        "WS01;A01;card;2199;;4908366099900433;2021.01.01",
+        "WS01;A04;transfer;2199;1179400820544448;;2021.01.01",
+        "WS01;A01;card;1;;123;",
+        "WS01;A01;;;",
+        ";;;",
+        ";a",
+        "",
+        " ",
+        "a;;b"
+    };
+    for (String line : lines) {
+      String[] parts = line.split(";");
+      fields.reset(line);
+      assertEquals(parts.length, fields.fieldCount(), line);
+      for (int i = 0; i < parts.length; i++) {
+        assertEquals(parts[i], fields.field(i), line);
+        assertEquals(parts[i].isBlank(), fields.isBlank(i), line);
+      }
+    }
+  }
+
+  @Test
+  void testCustomersAreLookedUpFromFields() {
+    String[] lines = {
+        "WS01;A01;card", "WS01;A011;card", "WS01;A0;card", "WS02;A01;card", "WS03;A01;card",
+        "WS01;\u00c1rv\u00edz;card", "WS01;\u00c1rvi;card", "WS01;Arv\u00edz;card", "WS01;;card"
+    };
+    for (CustomerDirectory customers :
+        new CustomerDirectory[] {new CustomerIndex(), new OffHeapCustomerDirectory()}) {
+      customers.add("WS01", "A01", "Name", "Address");
+      customers.add("WS02", "A01", "Name", "Address");
+      customers.add("WS01", "\u00c1rv\u00edz", "Name", "Address");
+      for (String line : lines) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        FieldTokenizer[] tokenizers = {
+            fields.reset(line),
+            new ByteLineTokenizer(';').reset(ByteBuffer.wrap(bytes), 0, bytes.length)
+        };
+        for (FieldTokenizer tokenizer : tokenizers) {
+          assertEquals(tokenizer.field(1).hashCode(), tokenizer.hash(1), line);
+          assertEquals(customers.indexOf(tokenizer.field(0), tokenizer.field(1)),
+              customers.indexOf(tokenizer, 0, 1), line);
+        }
+      }
+    }
+  }
+}
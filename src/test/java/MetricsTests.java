@@ -0,0 +1,45 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.Metrics;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+class MetricsTests {
+  @Test
+  void testCountersAreDumpedAndPublished() throws JMException {
+    Metrics.Counter counter = Metrics.counter("test.counter");
+    Metrics.Timer timer = Metrics.timer("test.timer");
+    long before = Metrics.counter("payments.lines").getCount();
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    int payments = CSVReaderUtil.readPayments(customers).size();
+    counter.add(5);
+    counter.increment();
+    timer.record(2_000_000, 3);
+
+    assertEquals(6, counter.getCount());
+    assertEquals(3, timer.getCount());
+    assertEquals(2_000_000, timer.getMeanNanos());
+    assertTrue(Metrics.counter("payments.lines").getCount() - before >= payments);
+    String json = Metrics.toJson();
+    assertTrue(json.contains("\"test.counter\": 6"));
+    assertTrue(json.contains(
+        "\"test.timer\": {\"count\": 3, \"totalMillis\": 6, \"meanMicros\": 2000}"));
+    assertTrue(json.contains("\"rejected.PAYMENT_UNKNOWN_CUSTOMER\": "));
+
+    Metrics.enableJmx();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertEquals(6L, server.getAttribute(
+        new ObjectName("otp:type=Counter,name=\"test.counter\""), "Count"));
+    assertEquals(3L, server.getAttribute(
+        new ObjectName("otp:type=Timer,name=\"test.timer\""), "Count"));
+    Metrics.counter("test.late").increment();
+    assertEquals(1L, server.getAttribute(
+        new ObjectName("otp:type=Counter,name=\"test.late\""), "Count"));
+  }
+}
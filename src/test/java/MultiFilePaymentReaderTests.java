@@ -0,0 +1,120 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.model.CustomerSum;
+import otp.model.WebShopSum;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.MultiFilePaymentReader;
+import otp.util.PaymentAggregator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+class MultiFilePaymentReaderTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testDirectoryWithCompressedAndCorruptFiles() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(customers, expected);
+
+    List<String> lines = Files.readAllLines(Paths.get(CSVReaderUtil.PAYMENTS_FILE),
+        StandardCharsets.UTF_8);
+    int third = lines.size() / 3;
+    write(directory.resolve("shop-00.csv"), lines.subList(0, third));
+    write(directory.resolve("shop-01.csv.gz"), lines.subList(third, 2 * third));
+    write(directory.resolve("shop-02.csv.gz"), lines.subList(2 * third, lines.size()));
+    Path corrupt = directory.resolve("shop-03.csv.gz");
+    Files.write(corrupt, Arrays.copyOf(Files.readAllBytes(directory.resolve("shop-02.csv.gz")),
+        20));
+    Files.write(directory.resolve("notes.txt"), Collections.singletonList("not payments"));
+
+    for (int workers : new int[] {1, 3}) {
+      MultiFilePaymentReader reader = new MultiFilePaymentReader(workers);
+      PaymentAggregator actual = reader.readPayments(directory.toString(), customers,
+          new PaymentAggregator(customers));
+
+      assertSums(expected, actual);
+      assertEquals(Collections.singletonList(corrupt), reader.getFailedFiles());
+    }
+  }
+
+  @Test
+  void testGlob() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(customers, expected);
+    List<String> lines = Files.readAllLines(Paths.get(CSVReaderUtil.PAYMENTS_FILE),
+        StandardCharsets.UTF_8);
+    write(directory.resolve("a-1.csv"), lines.subList(0, lines.size() / 2));
+    write(directory.resolve("a-2.csv.gz"), lines.subList(lines.size() / 2, lines.size()));
+    write(directory.resolve("b-1.csv"), lines);
+
+    String glob = directory.resolve("a-*").toString();
+    assertEquals(2, MultiFilePaymentReader.resolve(glob).size());
+    MultiFilePaymentReader reader = new MultiFilePaymentReader(2);
+    assertSums(expected, reader.readPayments(glob, customers, new PaymentAggregator(customers)));
+    assertEquals(Collections.emptyList(), reader.getFailedFiles());
+  }
+
+  @Test
+  void testReadErrorsAreThrown() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    MultiFilePaymentReader reader = new MultiFilePaymentReader(2);
+    assertThrows(UncheckedIOException.class, () -> reader.readPayments(
+        directory.resolve("missing").resolve("*.csv").toString(), customers,
+        new PaymentAggregator(customers)));
+    assertThrows(UncheckedIOException.class, () -> reader.readPayments(
+        directory.resolve("b-*").toString(), customers, new PaymentAggregator(customers)));
+
+    write(directory.resolve("a-1.csv"), Collections.singletonList("WS01;A01;card;1;;1;2021.01.01"));
+    Thread.currentThread().interrupt();
+    assertThrows(UncheckedIOException.class, () -> reader.readPayments(
+        directory.toString(), customers, new PaymentAggregator(customers)));
+    assertTrue(Thread.interrupted());
+  }
+
+  private static void assertSums(PaymentAggregator expected, PaymentAggregator actual) {
+    List<CustomerSum> expectedCustomers = expected.getCustomerSums();
+    List<CustomerSum> actualCustomers = actual.getCustomerSums();
+    assertEquals(expectedCustomers.size(), actualCustomers.size());
+    for (int i = 0; i < expectedCustomers.size(); i++) {
+      assertEquals(expectedCustomers.get(i).getCSVLine(), actualCustomers.get(i).getCSVLine());
+    }
+    List<WebShopSum> expectedShops = expected.getShopSums();
+    List<WebShopSum> actualShops = actual.getShopSums();
+    assertEquals(expectedShops.size(), actualShops.size());
+    for (int i = 0; i < expectedShops.size(); i++) {
+      assertEquals(expectedShops.get(i).getCSVLine(), actualShops.get(i).getCSVLine());
+    }
+  }
+
+  private static void write(Path file, List<String> lines) throws IOException {
+    OutputStream output = Files.newOutputStream(file);
+    if (file.toString().endsWith(MultiFilePaymentReader.GZIP_SUFFIX)) {
+      output = new GZIPOutputStream(output);
+    }
+    try (Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+    }
+  }
+}
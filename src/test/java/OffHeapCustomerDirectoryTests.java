@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+import otp.model.Customer;
+import otp.model.CustomerSum;
+import otp.model.WebShopSum;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.OffHeapCustomerDirectory;
+import otp.util.PaymentAggregator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class OffHeapCustomerDirectoryTests {
+  @Test
+  void testMatchesTheHeapIndex() {
+    Random random = new Random(42);
+    CustomerIndex expected = new CustomerIndex();
+    OffHeapCustomerDirectory customers = new OffHeapCustomerDirectory();
+    for (int i = 0; i < 200000; i++) {
+      Customer customer = new Customer();
+      customer.setShopId("WS0" + random.nextInt(5));
+      customer.setCustomerId("C" + random.nextInt(300000));
+      customer.setName(i % 3 == 0 ? "\u00c1rv\u00edzt\u0171r\u0151 " + i : "Name " + i);
+      customer.setAddress(i % 1000 == 0 ? "" : "Address " + random.nextInt());
+      assertEquals(expected.add(customer), customers.add(customer.getShopId(),
+          customer.getCustomerId(), customer.getName(), customer.getAddress()));
+    }
+
+    assertEquals(expected.size(), customers.size());
+    assertEquals(expected.getShopIds(), customers.getShopIds());
+    for (int i = 0; i < expected.size(); i++) {
+      Customer customer = expected.get(i);
+      assertEquals(i, customers.indexOf(customer.getShopId(), customer.getCustomerId()));
+      assertEquals(customer.getShopId(), customers.getCustomerShopId(i));
+      assertEquals(customer.getCustomerId(), customers.getCustomerId(i));
+      assertEquals(customer.getName(), customers.getName(i));
+      assertEquals(customer.getAddress(), customers.getAddress(i));
+      assertEquals(expected.getShopIndex(i), customers.getShopIndex(i));
+    }
+    assertEquals(-1, customers.indexOf("WS01", "C300000"));
+    assertEquals(-1, customers.indexOf("WS09", "C1"));
+    assertFalse(customers.add(customers.getCustomerShopId(0), customers.getCustomerId(0), "",
+        ""));
+    assertEquals(expected.size(), customers.size());
+  }
+
+  @Test
+  void testReportsMatchTheHeapIndex() {
+    CustomerIndex expectedCustomers = CSVReaderUtil.readCustomerIndex();
+    PaymentAggregator expected = new PaymentAggregator(expectedCustomers);
+    CSVReaderUtil.readPayments(expectedCustomers, expected::add);
+    OffHeapCustomerDirectory customers =
+        CSVReaderUtil.readOffHeapCustomerDirectory(CSVReaderUtil.CUSTOMERS_FILE);
+    PaymentAggregator aggregator = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(customers, aggregator::add);
+
+    assertEquals(lines(expected), lines(aggregator));
+  }
+
+  private static List<String> lines(PaymentAggregator aggregator) {
+    List<String> lines = new ArrayList<>();
+    for (CustomerSum customerSum : aggregator.getCustomerSums()) {
+      lines.add(customerSum.getCSVLine());
+    }
+    for (WebShopSum webShopSum : aggregator.getShopSums()) {
+      lines.add(webShopSum.getCSVLine());
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerDirectory;
+import otp.util.CustomerIndex;
+import otp.util.OffHeapCustomerDirectory;
+import otp.util.ParallelCustomerReader;
+import otp.util.RejectionReason;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class ParallelCustomerReaderTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testMatchesSequentialReader() throws IOException {
+    String customerFile = customers(20000);
+    Set<String> shops = new HashSet<>(Arrays.asList("WS01", "WS02", "WS03"));
+    long[] before = rejections();
+    CustomerIndex expected = CSVReaderUtil.readCustomers(customerFile, new CustomerIndex(), shops);
+    long[] expectedRejections = difference(rejections(), before);
+    for (RejectionReason reason : new RejectionReason[] {RejectionReason.CUSTOMER_FIELD_COUNT,
+        RejectionReason.CUSTOMER_EMPTY_CUSTOMER_ID, RejectionReason.CUSTOMER_UNKNOWN_SHOP,
+        RejectionReason.CUSTOMER_DUPLICATE}) {
+      assertTrue(expectedRejections[reason.ordinal()] > 0);
+    }
+
+    for (int parallelism : new int[] {1, 2, 4}) {
+      for (long chunkSize : new long[] {1, 1000, 1 << 20}) {
+        for (CustomerDirectory customers : new CustomerDirectory[] {new CustomerIndex(),
+            new OffHeapCustomerDirectory()}) {
+          before = rejections();
+          new ParallelCustomerReader(parallelism, chunkSize).readCustomers(customerFile,
+              customers, shops);
+
+          assertEquals(lines(expected), lines(customers));
+          assertEquals(Arrays.toString(expectedRejections),
+              Arrays.toString(difference(rejections(), before)));
+        }
+      }
+    }
+  }
+
+  private String customers(int count) throws IOException {
+    Random random = new Random(21);
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      String shop = "WS0" + (1 + random.nextInt(4));
+      String id = "C" + random.nextInt(count / 2);
+      switch (random.nextInt(20)) {
+        case 0:
+          content.append(shop).append(';').append(id).append(";Name\n");
+          break;
+        case 1:
+          content.append(shop).append("; ;Name;Address\n");
+          break;
+        case 2:
+          content.append(shop).append(';').append(id).append(";Name ").append(i)
+              .append(";Address\r\n");
+          break;
+        default:
+          content.append(shop).append(';').append(id).append(";Name ").append(i)
+              .append(";Address ").append(i).append('\n');
+      }
+    }
+    Path file = directory.resolve("customer.csv");
+    Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+    return file.toString();
+  }
+
+  @Test
+  void testThrowsReadErrors() {
+    String missing = directory.resolve("missing.csv").toString();
+    assertThrows(UncheckedIOException.class, () ->
+        new ParallelCustomerReader(2, 16).readCustomers(missing, new CustomerIndex(),
+            CSVReaderUtil.DEFAULT_SHOPS));
+    assertThrows(UncheckedIOException.class, () ->
+        CSVReaderUtil.readCustomers(missing, new CustomerIndex(), CSVReaderUtil.DEFAULT_SHOPS));
+  }
+
+  private long[] rejections() {
+    long[] counts = new long[RejectionReason.values().length];
+    for (RejectionReason reason : RejectionReason.values()) {
+      counts[reason.ordinal()] = CSVReaderUtil.getRejections().getCount(reason);
+    }
+    return counts;
+  }
+
+  private long[] difference(long[] after, long[] before) {
+    long[] counts = new long[after.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = after[i] - before[i];
+    }
+    return counts;
+  }
+
+  private List<String> lines(CustomerDirectory customers) {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < customers.size(); i++) {
+      lines.add(customers.getCustomerShopId(i) + ";" + customers.getCustomerId(i) + ";" +
+          customers.getName(i) + ";" + customers.getAddress(i));
+    }
+    return lines;
+  }
+}
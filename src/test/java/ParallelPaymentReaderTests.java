@@ -0,0 +1,37 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.ParallelPaymentReader;
+import otp.util.PaymentAggregator;
+import java.io.UncheckedIOException;
+
+class ParallelPaymentReaderTests {
+  @Test
+  void testMatchesSequentialReader() {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    PaymentAggregator sequential = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(customers, sequential::add);
+
+    for (int parallelism : new int[] {1, 2, 3, 8}) {
+      for (long chunkSize : new long[] {1, 16, 100, 1 << 20}) {
+        PaymentAggregator parallel =
+            new ParallelPaymentReader(parallelism, chunkSize).readPayments(customers);
+
+        assertEquals(sequential.getCustomerSums(), parallel.getCustomerSums());
+        assertEquals(sequential.getShopSums(), parallel.getShopSums());
+      }
+    }
+  }
+
+  @Test
+  void testThrowsReadErrors() {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    assertThrows(UncheckedIOException.class, () ->
+        new ParallelPaymentReader(2, 16).readPayments("missing.csv", customers));
+    assertThrows(UncheckedIOException.class, () ->
+        CSVReaderUtil.readPayments("missing.csv", customers, payment -> { }));
+  }
+}
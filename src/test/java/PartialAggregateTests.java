@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.PartialAggregate;
+import otp.util.ReportConfig;
+import otp.util.ReportPipeline;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+class PartialAggregateTests {
+  private static final String[] REPORTS = {"customers", "top", "shops"};
+  private static final int SHARDS = 3;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testMergedShardsMatchASingleRun() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    new ReportPipeline(reports(new ReportConfig(), "full"), customers).run();
+
+    for (String key : new String[] {ReportConfig.SHARD_KEY_CUSTOMER, ReportConfig.SHARD_KEY_SHOP}) {
+      List<String> partials = new ArrayList<>();
+      for (int shard = 0; shard < SHARDS; shard++) {
+        String partial = directory.resolve(key + shard + ".partial").toString();
+        partials.add(partial);
+        new ReportPipeline(new ReportConfig()
+            .setProperty(ReportConfig.MODE, ReportConfig.MODE_PARTIAL)
+            .setProperty(ReportConfig.SHARD, shard + "/" + SHARDS)
+            .setProperty(ReportConfig.SHARD_KEY, key)
+            .setProperty(ReportConfig.PARTIAL_FILE, partial), customers).run();
+      }
+      ReportConfig merge = new ReportConfig()
+          .setProperty(ReportConfig.MODE, ReportConfig.MODE_MERGE)
+          .setProperty(ReportConfig.PARTIAL_FILES, String.join(",", partials));
+      new ReportPipeline(reports(merge, key), customers).run();
+
+      for (String report : REPORTS) {
+        assertEquals(read("full-" + report + ".csv"), read(key + "-" + report + ".csv"), report);
+      }
+    }
+  }
+
+  @Test
+  void testCountsAddUp() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    PartialAggregate whole = new PartialAggregate(customers);
+    CSVReaderUtil.readPayments(customers, whole);
+    PartialAggregate merged = new PartialAggregate(customers);
+    for (int shard = 0; shard < SHARDS; shard++) {
+      PartialAggregate partial = new PartialAggregate(customers, shard, SHARDS, false);
+      CSVReaderUtil.readPayments(customers, partial);
+      String fileName = directory.resolve(shard + ".partial").toString();
+      partial.write(fileName);
+      merged.read(fileName);
+    }
+
+    assertEquals(whole.getPaymentCount(), merged.getPaymentCount());
+    for (int i = 0; i < customers.size(); i++) {
+      assertEquals(whole.getCustomerCount(i), merged.getCustomerCount(i));
+    }
+  }
+
+  @Test
+  void testCorruptFileIsAnIOException() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    PartialAggregate partial = new PartialAggregate(customers);
+    CSVReaderUtil.readPayments(customers, partial);
+    Path file = directory.resolve("corrupt.partial");
+    partial.write(file.toString());
+
+    byte[] bytes;
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      bytes = in.readAllBytes();
+    }
+    String content = new String(bytes, StandardCharsets.ISO_8859_1);
+    bytes = content.replace("TRANSFER", "TRANSFEX").getBytes(StandardCharsets.ISO_8859_1);
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+      out.write(bytes);
+    }
+
+    IOException e = assertThrows(StreamCorruptedException.class,
+        () -> new PartialAggregate(customers).read(file.toString()));
+    assertTrue(e.getMessage().contains(file.toString()));
+  }
+
+  private ReportConfig reports(ReportConfig config, String prefix) {
+    for (String report : REPORTS) {
+      config.setProperty("report." + report + ".file",
+          directory.resolve(prefix + "-" + report + ".csv").toString());
+    }
+    return config;
+  }
+
+  private List<String> read(String fileName) throws IOException {
+    return Files.readAllLines(directory.resolve(fileName), StandardCharsets.UTF_8);
+  }
+}
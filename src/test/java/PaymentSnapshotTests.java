@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.model.Customer;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import otp.util.PaymentSnapshot;
+import otp.util.PaymentSnapshotWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class PaymentSnapshotTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testSnapshotRoundTrip() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    List<Customer> customerList = customers.getCustomers();
+    Random random = new Random(11);
+    List<Payment> payments = new ArrayList<>(CSVReaderUtil.readPayments(customers));
+    for (int i = 0; i < 150000; i++) {
+      Customer customer = customerList.get(random.nextInt(customerList.size()));
+      Payment payment = new Payment();
+      payment.setShopId(customer.getShopId());
+      payment.setCustomerId(customer.getCustomerId());
+      payment.setType(random.nextBoolean() ? PaymentType.CARD :
+          PaymentType.TRANSFER);
+      payment.setAmount(BigDecimal.valueOf(random.nextInt(100000), random.nextInt(3)));
+      payment.setPaymentDate(LocalDate.of(2021, 1, 1).plusDays(random.nextInt(365)));
+      payments.add(payment);
+    }
+
+    String fileName = directory.resolve("payments.snapshot").toString();
+    try (PaymentSnapshotWriter writer = new PaymentSnapshotWriter(fileName, customers, 42)) {
+      payments.forEach(writer);
+    }
+
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    expected.addAll(payments);
+    try (PaymentSnapshot snapshot = PaymentSnapshot.open(fileName)) {
+      assertEquals(payments.size(), snapshot.size());
+      assertEquals(42, snapshot.getSourceFingerprint());
+
+      PaymentAggregator actual = snapshot.aggregate(customers);
+      assertEquals(expected.getCustomerSums(), actual.getCustomerSums());
+      assertEquals(expected.getShopSums(), actual.getShopSums());
+
+      List<Payment> read = new ArrayList<>();
+      snapshot.forEach(read::add);
+      assertEquals(payments.size(), read.size());
+      for (int i = 0; i < payments.size(); i++) {
+        assertEquals(describe(payments.get(i)), describe(read.get(i)));
+      }
+    }
+  }
+
+  @Test
+  void testHeaderMismatchNamesTheField() throws IOException {
+    String fileName = directory.resolve("payments.snapshot").toString();
+    new PaymentSnapshotWriter(fileName, CSVReaderUtil.readCustomerIndex(), 42).close();
+    try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+      file.seek(12);
+      file.writeInt(Integer.reverseBytes(63));
+    }
+    IOException e = assertThrows(IOException.class, () -> PaymentSnapshot.open(fileName));
+    assertTrue(e.getMessage().contains("bits per payment type"), e.getMessage());
+  }
+
+  @Test
+  void testChangedShopsWriteANewSnapshot() {
+    String snapshotFile = directory.resolve("payments.snapshot").toString();
+    PaymentSnapshot.aggregate(CSVReaderUtil.CUSTOMERS_FILE,
+        CSVReaderUtil.readCustomers(CSVReaderUtil.CUSTOMERS_FILE, new CustomerIndex(),
+            Set.of("WS01")), CSVReaderUtil.PAYMENTS_FILE, snapshotFile);
+
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(customers, expected::add);
+    PaymentAggregator actual = PaymentSnapshot.aggregate(CSVReaderUtil.CUSTOMERS_FILE, customers,
+        CSVReaderUtil.PAYMENTS_FILE, snapshotFile);
+    assertEquals(expected.getCustomerSums(), actual.getCustomerSums());
+    assertEquals(expected.getShopSums(), actual.getShopSums());
+  }
+
+  private String describe(Payment payment) {
+    return payment.getShopId() + ";" + payment.getCustomerId() + ";" + payment.getType() + ";" +
+        payment.getAmount() + ";" + payment.getPaymentDate();
+  }
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.util.LineTokenizer;
+import otp.util.RejectionReason;
+import otp.util.RejectionReporter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class RejectionReporterTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testRejectionsAreCountedPerReasonAndShop() throws IOException {
+    Path rejectsFile = directory.resolve("rejects.csv");
+    RejectionReporter reporter = new RejectionReporter(
+        LogManager.getLogger(RejectionReporterTests.class), 2, rejectsFile.toString());
+    LineTokenizer fields = new LineTokenizer(';');
+    String[] lines = {
+        "WS01;A99;card;100;;4908366099900433;2021.01.01",
+        "WS02;A99;card;100;;4908366099900433;2021.01.01",
+        "WS01;A98;card;100;;4908366099900433;2021.01.01",
+        "WS01;A97;card;100;;4908366099900433;2021.01.01"
+    };
+    for (String line : lines) {
+      fields.reset(line);
+      reporter.reject(RejectionReason.PAYMENT_UNKNOWN_CUSTOMER, fields);
+    }
+    fields.reset(";A01;card");
+    reporter.reject(RejectionReason.PAYMENT_FIELD_COUNT, fields);
+
+    assertEquals(4, reporter.getCount(RejectionReason.PAYMENT_UNKNOWN_CUSTOMER));
+    assertEquals(3, reporter.getCount(RejectionReason.PAYMENT_UNKNOWN_CUSTOMER, "WS01"));
+    assertEquals(1, reporter.getCount(RejectionReason.PAYMENT_UNKNOWN_CUSTOMER, "WS02"));
+    assertEquals(1, reporter.getCount(RejectionReason.PAYMENT_FIELD_COUNT, "-"));
+    assertEquals(0, reporter.getCount(RejectionReason.PAYMENT_INVALID_DATE));
+    assertEquals(5, reporter.getTotal());
+
+    reporter.logSummary();
+    List<String> rejected = new ArrayList<>(Arrays.asList(
+        "PAYMENT_UNKNOWN_CUSTOMER;" + lines[0],
+        "PAYMENT_UNKNOWN_CUSTOMER;" + lines[1],
+        "PAYMENT_UNKNOWN_CUSTOMER;" + lines[2],
+        "PAYMENT_UNKNOWN_CUSTOMER;" + lines[3],
+        "PAYMENT_FIELD_COUNT;;A01;card"
+    ));
+    assertEquals(rejected, Files.readAllLines(rejectsFile, StandardCharsets.UTF_8));
+
+    fields.reset(lines[0]);
+    reporter.reject(RejectionReason.PAYMENT_UNKNOWN_CUSTOMER, fields);
+    reporter.close();
+    reporter.reject(RejectionReason.PAYMENT_UNKNOWN_CUSTOMER, fields);
+    reporter.close();
+    rejected.add("PAYMENT_UNKNOWN_CUSTOMER;" + lines[0]);
+    rejected.add("PAYMENT_UNKNOWN_CUSTOMER;" + lines[0]);
+    assertEquals(rejected, Files.readAllLines(rejectsFile, StandardCharsets.UTF_8));
+  }
+}
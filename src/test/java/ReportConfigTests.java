@@ -0,0 +1,35 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.util.ReportConfig;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ReportConfigTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testArgumentsOverrideTheConfigFile() throws IOException {
+    Path configFile = directory.resolve("report.properties");
+    Files.write(configFile, "threads=3\nreports=customers\n".getBytes(StandardCharsets.UTF_8));
+    ReportConfig config = ReportConfig.fromArgs("--config=" + configFile, "--threads=2");
+    assertEquals(2, config.getThreads());
+    assertEquals(1, config.getReports().size());
+  }
+
+  @Test
+  void testInvalidSettingsAreThrown() {
+    Path missing = directory.resolve("missing.properties");
+    UncheckedIOException e = assertThrows(UncheckedIOException.class, () ->
+        ReportConfig.fromArgs("--config=" + missing));
+    assertTrue(e.getMessage().contains(missing.toString()), e.getMessage());
+    assertThrows(IllegalArgumentException.class, () -> ReportConfig.fromArgs("--threads=0"));
+  }
+}
@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.model.CustomerSum;
+import otp.model.Payment;
+import otp.model.WebShopSum;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import otp.util.ReportConfig;
+import otp.util.ReportPipeline;
+import otp.util.ReportStage;
+import otp.util.ReportUtil;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class ReportPipelineTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testRequestedReportsInOneScan() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(customers, expected::add);
+
+    ReportPipeline.register("count", directory.resolve("count.csv").toString(),
+        (customerIndex, config) -> new CountingStage());
+    String[][] readers = {{"1", ReportConfig.READER_CHUNKED}, {"4", ReportConfig.READER_CHUNKED},
+        {"4", ReportConfig.READER_STAGED}};
+    for (String[] reader : readers) {
+      ReportConfig config = new ReportConfig()
+          .setProperty(ReportConfig.REPORTS, "customers, shops,types,count,top")
+          .setProperty(ReportConfig.THREADS, reader[0])
+          .setProperty(ReportConfig.READER, reader[1])
+          .setProperty("report.customers.file", report("customers.csv"))
+          .setProperty("report.shops.file", report("shops.csv"))
+          .setProperty("report.types.file", report("types.csv"))
+          .setProperty("report.top.file", report("top-customers.csv"));
+      new ReportPipeline(config, customers).run();
+
+      List<String> customerLines = new ArrayList<>();
+      for (CustomerSum customerSum : expected.getCustomerSums()) {
+        customerLines.add(customerSum.getCSVLine());
+      }
+      assertEquals(customerLines, read("customers.csv"));
+      List<String> shopLines = new ArrayList<>();
+      for (WebShopSum webShopSum : expected.getShopSums()) {
+        shopLines.add(webShopSum.getCSVLine());
+      }
+      assertEquals(shopLines, read("shops.csv"));
+      List<String> topLines = new ArrayList<>();
+      for (CustomerSum customerSum :
+          ReportUtil.selectTopCustomers(expected.getCustomerSums(), config.getTopCount())) {
+        topLines.add(customerSum.getCSVLine());
+      }
+      assertEquals(topLines, read("top-customers.csv"));
+      assertEquals(2, read("types.csv").size());
+      assertEquals(Collections.singletonList(Integer.toString(CSVReaderUtil.readPayments(customers)
+          .size())), read("count.csv"));
+      assertFalse(Files.exists(directory.resolve("top.csv")));
+    }
+  }
+
+  private String report(String fileName) {
+    return directory.resolve(fileName).toString();
+  }
+
+  private List<String> read(String fileName) throws IOException {
+    return Files.readAllLines(directory.resolve(fileName), StandardCharsets.UTF_8);
+  }
+
+  private static class CountingStage implements ReportStage {
+    private int count;
+
+    @Override
+    public void accept(Payment payment) {
+      count++;
+    }
+
+    @Override
+    public ReportStage newPartial() {
+      return new CountingStage();
+    }
+
+    @Override
+    public void merge(ReportStage other) {
+      count += ((CountingStage) other).count;
+    }
+
+    @Override
+    public void write(String fileName) {
+      try {
+        Files.write(Paths.get(fileName),
+            Collections.singletonList(Integer.toString(count)), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
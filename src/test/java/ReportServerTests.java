@@ -0,0 +1,133 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import otp.model.CustomerSum;
+import otp.model.WebShopSum;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.DateRangeAggregator;
+import otp.util.DateRangeIndex;
+import otp.util.PaymentAggregator;
+import otp.util.ReportQueries;
+import otp.util.ReportServer;
+import otp.util.ReportUtil;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ReportServerTests {
+  private CustomerIndex customers;
+  private PaymentAggregator expected;
+  private ReportServer server;
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  @BeforeEach
+  void start() throws IOException {
+    customers = CSVReaderUtil.readCustomerIndex();
+    expected = new PaymentAggregator(customers);
+    CSVReaderUtil.readPayments(customers, expected);
+    ReportQueries.Loader loaded = new ReportQueries.Loader(customers);
+    CSVReaderUtil.readPayments(customers, loaded);
+    server = new ReportServer(new ReportQueries(loaded, 2),
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, 2);
+  }
+
+  @AfterEach
+  void stop() {
+    server.close();
+  }
+
+  @Test
+  void testQueries() throws IOException, InterruptedException {
+    List<CustomerSum> customerSums = expected.getCustomerSums();
+    assertEquals(customerSums.get(0).getCSVLine() + "\n", get("/customer?shop=WS01&customer=A01"));
+    assertEquals(404, status("/customer?shop=WS01&customer=nobody"));
+    assertEquals(400, status("/customer?shop=WS01"));
+
+    List<String> shopLines = new ArrayList<>();
+    for (WebShopSum webShopSum : expected.getShopSums()) {
+      shopLines.add(webShopSum.getCSVLine());
+    }
+    assertEquals(shopLines, lines(get("/shops")));
+    assertEquals(shopLines.get(0) + "\n", get("/shop?shop=WS01"));
+
+    List<String> topLines = new ArrayList<>();
+    for (CustomerSum customerSum : ReportUtil.selectTopCustomers(customerSums, 3)) {
+      topLines.add(customerSum.getCSVLine());
+    }
+    assertEquals(topLines, lines(get("/top?n=3")));
+    assertEquals(2, lines(get("/top")).size());
+
+    DateRangeAggregator days = new DateRangeAggregator(customers);
+    CSVReaderUtil.readPayments(customers, days);
+    DateRangeIndex index = days.getIndex();
+    LocalDate from = LocalDate.of(2021, 1, 10);
+    LocalDate to = LocalDate.of(2021, 1, 31);
+    assertEquals(index.getCustomerSums(from, to).get(0).getCSVLine() + "\n",
+        get("/customer?shop=WS01&customer=A01&from=2021.01.10&to=2021.01.31"));
+    List<String> rangeLines = new ArrayList<>();
+    for (WebShopSum webShopSum : index.getShopSums(from, to)) {
+      rangeLines.add(webShopSum.getCSVLine());
+    }
+    assertEquals(rangeLines, lines(get("/shops?from=2021.01.10&to=2021.01.31")));
+    assertEquals(400, status("/shops?from=2021-01-10"));
+  }
+
+  @Test
+  void testAppendedPayments() throws IOException, InterruptedException {
+    String payments = "WS01;A01;card;1000;;4908366099900433;2021.01.15\n" +
+        "WS01;A01;transfer;500.5;HU1;;2021.02.01\n" +
+        "WS01;A01;transfer;1;HU1;;2021.03.01\n" +
+        "WS01;nobody;card;1;;4908366099900433;2021.01.15\n";
+    HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/payments"))
+        .POST(HttpRequest.BodyPublishers.ofString(payments)).build(),
+        HttpResponse.BodyHandlers.ofString());
+    assertEquals("3;1\n", response.body());
+
+    CustomerSum customerSum = expected.getCustomerSums().get(0);
+    CustomerSum appended = new CustomerSum(customerSum.getName(), customerSum.getAddress(),
+        customerSum.getSum().add(new BigDecimal("1501.5")));
+    assertEquals(appended.getCSVLine() + "\n", get("/customer?shop=WS01&customer=A01"));
+
+    DateRangeAggregator days = new DateRangeAggregator(customers);
+    CSVReaderUtil.readPayments(customers, days);
+    CustomerSum range = days.getIndex().getCustomerSums(LocalDate.of(2021, 1, 10), null).get(0);
+    CustomerSum appendedRange = new CustomerSum(range.getName(), range.getAddress(),
+        range.getSum().add(new BigDecimal("1501.5")));
+    assertEquals(appendedRange.getCSVLine() + "\n",
+        get("/customer?shop=WS01&customer=A01&from=2021.01.10"));
+    assertEquals(405, status("/payments"));
+  }
+
+  private URI uri(String path) {
+    return URI.create("http://" + server.getAddress().getHostString() + ":" +
+        server.getAddress().getPort() + path);
+  }
+
+  private String get(String path) throws IOException, InterruptedException {
+    HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(path)).build(),
+        HttpResponse.BodyHandlers.ofString());
+    assertEquals(200, response.statusCode(), response.body());
+    return response.body();
+  }
+
+  private int status(String path) throws IOException, InterruptedException {
+    return client.send(HttpRequest.newBuilder(uri(path)).build(),
+        HttpResponse.BodyHandlers.ofString()).statusCode();
+  }
+
+  private static List<String> lines(String body) {
+    return Arrays.asList(body.split("\n"));
+  }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.util.ReportWriter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+class ReportWriterTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testWritesUtf8AcrossBufferBoundaries() throws IOException {
+    List<String> lines = new ArrayList<>();
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 50000; i++) {
+      line.setLength(0);
+      line.append("V\u00e1s\u00e1rl\u00f3 ").append(i).append(';')
+          .append(i % 7 == 0 ? "Gy\u0151r \ud83d\ude00" : "Budapest");
+      lines.add(line.toString());
+    }
+    lines.add("");
+
+    for (String fileName : new String[] {"report.csv", "report.csv.gz"}) {
+      Path file = directory.resolve(fileName);
+      try (ReportWriter writer = new ReportWriter(file.toString())) {
+        for (String reportLine : lines) {
+          writer.writeLine(reportLine);
+        }
+        writer.commit();
+      }
+      assertEquals(lines, read(file));
+    }
+    assertEquals(Arrays.asList("report.csv", "report.csv.gz"), list());
+  }
+
+  @Test
+  void testUncommittedWriteKeepsThePreviousReport() throws IOException {
+    Path file = directory.resolve("report.csv");
+    Files.write(file, Collections.singletonList("previous"), StandardCharsets.UTF_8);
+    try (ReportWriter writer = new ReportWriter(file.toString())) {
+      writer.writeLine("partial");
+    }
+    assertEquals(Collections.singletonList("previous"), read(file));
+    assertEquals(Collections.singletonList("report.csv"), list());
+    assertFalse(Files.exists(directory.resolve("report.csv.tmp")));
+  }
+
+  private static List<String> read(Path file) throws IOException {
+    if (!file.toString().endsWith(ReportWriter.GZIP_SUFFIX)) {
+      return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private List<String> list() throws IOException {
+    List<String> files = new ArrayList<>();
+    try (Stream<Path> paths = Files.list(directory)) {
+      paths.forEach(path -> files.add(path.getFileName().toString()));
+    }
+    Collections.sort(files);
+    return files;
+  }
+}
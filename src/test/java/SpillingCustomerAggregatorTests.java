@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.model.CustomerSum;
+import otp.model.Payment;
+import otp.model.PaymentType;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import otp.util.ReportConfig;
+import otp.util.ReportPipeline;
+import otp.util.SpillingCustomerAggregator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+class SpillingCustomerAggregatorTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testSpilledTotalsMatchInMemoryTotals() throws IOException {
+    CustomerIndex customers = new CustomerIndex();
+    for (int i = 0; i < 3000; i++) {
+      customers.add("WS0" + (1 + i % 2), "C" + i, "Name " + i, "Address " + i);
+    }
+    Path spillDirectory = Files.createDirectory(directory.resolve("spill"));
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    SpillingCustomerAggregator aggregator =
+        new SpillingCustomerAggregator(customers, 256, spillDirectory);
+    SpillingCustomerAggregator partial = aggregator.newPartial();
+    Random random = new Random(22);
+    for (int i = 0; i < 20000; i++) {
+      int customer = random.nextInt(2500);
+      long units = random.nextInt(1000000) - 1000;
+      int scale = random.nextInt(3);
+      (i % 3 == 0 ? partial : aggregator).add(customer, units, scale);
+      expected.accept(payment(customers, customer, units, scale));
+    }
+    aggregator.merge(partial);
+    assertTrue(aggregator.getRunCount() > 64);
+
+    List<CustomerSum> sums = new ArrayList<>();
+    aggregator.forEachTotal((index, units, scale) -> sums.add(new CustomerSum(
+        customers.getName(index), customers.getAddress(index), units, scale)));
+    assertEquals(expected.getCustomerSums(), sums);
+    aggregator.close();
+    try (Stream<Path> runs = Files.list(spillDirectory)) {
+      assertEquals(0, runs.count());
+    }
+  }
+
+  @Test
+  void testPartialsShareTheBudget() throws IOException {
+    CustomerIndex customers = new CustomerIndex();
+    for (int i = 0; i < 3000; i++) {
+      customers.add("WS01", "C" + i, "Name " + i, "Address " + i);
+    }
+    PaymentAggregator expected = new PaymentAggregator(customers);
+    SpillingCustomerAggregator aggregator = new SpillingCustomerAggregator(customers, 4096,
+        Files.createDirectory(directory.resolve("spill")));
+    List<SpillingCustomerAggregator> partials = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      partials.add(aggregator.newPartial());
+    }
+    for (int customer = 0; customer < customers.size(); customer++) {
+      partials.get(customer % partials.size()).add(customer, customer, 0);
+      expected.accept(payment(customers, customer, customer, 0));
+    }
+    long reserved = aggregator.getReservedMemory();
+    for (SpillingCustomerAggregator partial : partials) {
+      reserved += partial.getReservedMemory();
+    }
+    assertTrue(reserved <= 4096);
+    for (SpillingCustomerAggregator partial : partials) {
+      aggregator.merge(partial);
+      assertEquals(0, partial.getReservedMemory());
+    }
+    assertTrue(aggregator.getReservedMemory() <= 4096);
+
+    List<CustomerSum> sums = new ArrayList<>();
+    aggregator.forEachTotal((index, units, scale) -> sums.add(new CustomerSum(
+        customers.getName(index), customers.getAddress(index), units, scale)));
+    assertEquals(expected.getCustomerSums(), sums);
+    aggregator.close();
+  }
+
+  @Test
+  void testExternalAggregationReports() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    for (String aggregation : new String[] {ReportConfig.AGGREGATION_MEMORY,
+        ReportConfig.AGGREGATION_EXTERNAL}) {
+      new ReportPipeline(new ReportConfig()
+          .setProperty(ReportConfig.REPORTS, "customers,top")
+          .setProperty(ReportConfig.THREADS, "3")
+          .setProperty(ReportConfig.AGGREGATION, aggregation)
+          .setProperty(ReportConfig.SPILL_MEMORY, "1")
+          .setProperty(ReportConfig.SPILL_DIR, directory.toString())
+          .setProperty("report.customers.file", report(aggregation + "-customers.csv"))
+          .setProperty("report.top.file", report(aggregation + "-top.csv")), customers).run();
+    }
+    assertEquals(read("memory-customers.csv"), read("external-customers.csv"));
+    assertEquals(read("memory-top.csv"), read("external-top.csv"));
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(0, files.filter(file -> file.toString().endsWith(".run")).count());
+    }
+  }
+
+  private Payment payment(CustomerIndex customers, int customer, long units, int scale) {
+    Payment payment = new Payment();
+    payment.setCustomer(customers, customer);
+    payment.setType(PaymentType.CARD);
+    payment.setAmount(units, scale);
+    return payment;
+  }
+
+  private String report(String fileName) {
+    return directory.resolve(fileName).toString();
+  }
+
+  private List<String> read(String fileName) throws IOException {
+    return Files.readAllLines(directory.resolve(fileName), StandardCharsets.UTF_8);
+  }
+}
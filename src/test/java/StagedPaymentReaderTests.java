@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import otp.model.Payment;
+import otp.util.CSVReaderUtil;
+import otp.util.CustomerIndex;
+import otp.util.PaymentAggregator;
+import otp.util.StagedPaymentReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+class StagedPaymentReaderTests {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testMatchesSequentialReader() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    String payments = payments();
+    PaymentAggregator sequential = new PaymentAggregator(customers);
+    List<Payment> sequentialPayments = new ArrayList<>();
+    CSVReaderUtil.readPayments(payments, customers, payment -> {
+      sequential.add(payment);
+      sequentialPayments.add(payment);
+    });
+
+    for (int parsers : new int[] {1, 2, 4}) {
+      for (int blockSize : new int[] {1, 7, 100, 1 << 20}) {
+        for (int blocks : new int[] {1, 3}) {
+          PaymentAggregator staged = new PaymentAggregator(customers);
+          List<Payment> stagedPayments = new ArrayList<>();
+          new StagedPaymentReader(parsers, blockSize, blocks).readPayments(payments, customers,
+              payment -> {
+                staged.add(payment);
+                stagedPayments.add(payment);
+              });
+
+          assertEquals(sequential.getCustomerSums(), staged.getCustomerSums());
+          assertEquals(sequential.getShopSums(), staged.getShopSums());
+          assertEquals(dates(sequentialPayments), dates(stagedPayments));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testConsumerFailureStopsThePipeline() throws IOException {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    StagedPaymentReader reader = new StagedPaymentReader(2, 16, 2);
+    assertThrows(IllegalStateException.class, () -> reader.readPayments(payments(), customers,
+        payment -> {
+          throw new IllegalStateException("Consumer failed");
+        }));
+  }
+
+  @Test
+  void testReadErrorsAreThrown() {
+    CustomerIndex customers = CSVReaderUtil.readCustomerIndex();
+    StagedPaymentReader reader = new StagedPaymentReader(2, 16, 2);
+    assertThrows(UncheckedIOException.class, () -> reader.readPayments(
+        directory.resolve("missing.csv").toString(), customers, payment -> { }));
+    assertThrows(UncheckedIOException.class, () -> reader.readPayments(
+        directory.toString(), customers, payment -> { }));
+
+    Thread.currentThread().interrupt();
+    assertThrows(UncheckedIOException.class, () -> reader.readPayments(
+        CSVReaderUtil.PAYMENTS_FILE, customers, payment -> { }));
+    assertTrue(Thread.interrupted());
+  }
+
+  private String payments() throws IOException {
+    List<String> lines = Files.readAllLines(
+        Paths.get(CSVReaderUtil.PAYMENTS_FILE), StandardCharsets.UTF_8);
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      for (String line : lines) {
+        content.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+      }
+    }
+    content.append("WS01;A01;card;1;;4908366099900433;2021.01.").append("0".repeat(300))
+        .append('\n');
+    content.append("WS02;A04;card;3;;6757619297057019;2021.01.05");
+    Path file = directory.resolve("payments.csv");
+    Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+    return file.toString();
+  }
+
+  private List<String> dates(List<Payment> payments) {
+    List<String> dates = new ArrayList<>();
+    for (Payment payment : payments) {
+      dates.add(payment.getCustomerId() + payment.getPaymentDate());
+    }
+    return dates;
+  }
+}
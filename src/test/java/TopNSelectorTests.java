@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import otp.model.CustomerSum;
+import otp.util.ReportUtil;
+import otp.util.TopNSelector;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+class TopNSelectorTests {
+  @Test
+  void testSelectionMatchesStableSort() {
+    Random random = new Random(42);
+    List<CustomerSum> customerSums = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      customerSums.add(new CustomerSum("Customer " + i, "Address " + i, random.nextInt(20), 0));
+    }
+    List<CustomerSum> original = new ArrayList<>(customerSums);
+    List<CustomerSum> sorted = new ArrayList<>(customerSums);
+    sorted.sort(Comparator.comparingLong(CustomerSum::getSumUnits).reversed());
+
+    for (int n : new int[] {1, 2, 7, 1000, 2000}) {
+      List<CustomerSum> top = ReportUtil.selectTopCustomers(customerSums, n);
+      assertEquals(sorted.subList(0, Math.min(n, sorted.size())), top);
+    }
+    assertEquals(original, customerSums);
+  }
+
+  @Test
+  void testIncrementalUpdates() {
+    Random random = new Random(7);
+    long[] totals = new long[50];
+    TopNSelector<Integer> selector = new TopNSelector<>(3, (i, j) -> {
+      int result = Long.compare(totals[j], totals[i]);
+      return result != 0 ? result : Integer.compare(i, j);
+    });
+    for (int i = 0; i < totals.length; i++) {
+      selector.offer(i);
+    }
+    for (int step = 0; step < 5000; step++) {
+      int customer = random.nextInt(totals.length);
+      long change = random.nextInt(100) - 40;
+      totals[customer] += change;
+      if (change < 0) {
+        selector.lower(customer);
+      } else {
+        selector.update(customer);
+      }
+      if (!selector.isExact()) {
+        selector.clear();
+        for (int i = 0; i < totals.length; i++) {
+          selector.offer(i);
+        }
+      }
+
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < totals.length; i++) {
+        expected.add(i);
+      }
+      expected.sort((i, j) -> {
+        int result = Long.compare(totals[j], totals[i]);
+        return result != 0 ? result : Integer.compare(i, j);
+      });
+      assertEquals(expected.subList(0, 3), selector.getTop());
+    }
+  }
+}